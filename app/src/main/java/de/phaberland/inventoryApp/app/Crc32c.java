@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * Crc32c calculates the CRC-32C (Castagnoli) checksum, as used by
+ * iSCSI and ext4. It detects more kinds of errors than the CRC32
+ * of java.util.zip, which is also available on every platform,
+ * while java.util.zip.CRC32C is not available on older devices.
+ *
+ * The calculation is table driven, processing 8 bytes at a time
+ * (slicing by 8) for larger arrays.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+class Crc32c implements Checksum {
+    // reversed Castagnoli polynomial
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int[][] TABLES = createTables();
+
+    private int m_crc = 0xFFFFFFFF;
+
+    @Override
+    public void update(int b) {
+        m_crc = (m_crc >>> 8) ^ TABLES[0][(m_crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int[] t0 = TABLES[0];
+        int[] t1 = TABLES[1];
+        int[] t2 = TABLES[2];
+        int[] t3 = TABLES[3];
+        int[] t4 = TABLES[4];
+        int[] t5 = TABLES[5];
+        int[] t6 = TABLES[6];
+        int[] t7 = TABLES[7];
+        int crc = m_crc;
+        int end = off + len;
+        while(end - off >= 8) {
+            int low = crc
+                    ^ ((b[off] & 0xFF)
+                    | (b[off + 1] & 0xFF) << 8
+                    | (b[off + 2] & 0xFF) << 16
+                    | (b[off + 3] & 0xFF) << 24);
+            crc = t7[low & 0xFF]
+                    ^ t6[(low >>> 8) & 0xFF]
+                    ^ t5[(low >>> 16) & 0xFF]
+                    ^ t4[low >>> 24]
+                    ^ t3[b[off + 4] & 0xFF]
+                    ^ t2[b[off + 5] & 0xFF]
+                    ^ t1[b[off + 6] & 0xFF]
+                    ^ t0[b[off + 7] & 0xFF];
+            off += 8;
+        }
+        for(; off < end; off++) {
+            crc = (crc >>> 8) ^ t0[(crc ^ b[off]) & 0xFF];
+        }
+        m_crc = crc;
+    }
+
+    /**
+     * Updates the checksum with the bytes of the buffer from its
+     * position to its limit. The position of the buffer is not changed.
+     * @param buffer the buffer to read the bytes from
+     */
+    public void update(ByteBuffer buffer) {
+        if(buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        // copy in chunks, so direct and mapped buffers are processed as fast as arrays
+        ByteBuffer source = buffer.duplicate();
+        byte[] chunk = new byte[8192];
+        while(source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            update(chunk, 0, length);
+        }
+    }
+
+    @Override
+    public long getValue() {
+        return (~m_crc) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        m_crc = 0xFFFFFFFF;
+    }
+
+    /**
+     * Creates the tables for slicing by 8. TABLES[0] is the usual
+     * byte wise table, TABLES[k] gives the crc of a byte followed by k zero bytes.
+     */
+    private static int[][] createTables() {
+        int[][] tables = new int[8][256];
+        for(int i = 0; i < 256; i++) {
+            int crc = i;
+            for(int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            tables[0][i] = crc;
+        }
+        for(int i = 0; i < 256; i++) {
+            int crc = tables[0][i];
+            for(int k = 1; k < 8; k++) {
+                crc = (crc >>> 8) ^ tables[0][crc & 0xFF];
+                tables[k][i] = crc;
+            }
+        }
+        return tables;
+    }
+}
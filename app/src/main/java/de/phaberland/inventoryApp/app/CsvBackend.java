@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import android.content.Context;
+
+import de.phaberland.inventoryApp.data.DataSnapshot;
+
+/**
+ * CsvBackend stores the items and lists in the csv format, which is also
+ * used to export them to the user, within the application files folder.
+ * This is the way older versions of the app stored the data.
+ *
+ * The file is readable by any tool, but has to be parsed row by row
+ * and is written completely every time. It does not keep the change
+ * versions of the items, so after reading the file all items count as
+ * changed for the next export of changes.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ * @see CsvExImporter
+ */
+class CsvBackend implements StorageBackend {
+    private final Context m_context;
+
+    /**
+     * Constructs the backend for the csv file of the application.
+     * @param context context providing the application files folder
+     */
+    CsvBackend(Context context) {
+        m_context = context;
+    }
+
+    @Override
+    public String getName() {
+        return CSV;
+    }
+
+    @Override
+    public int read() {
+        return CsvExImporter.importCsvFromCache(m_context) ? CURRENT : NONE;
+    }
+
+    @Override
+    public boolean write(DataSnapshot snapshot) {
+        return CsvExImporter.exportCsvToCache(m_context, snapshot);
+    }
+
+    @Override
+    public void close() {
+        // nothing kept open
+    }
+}
@@ -8,17 +8,26 @@ package de.phaberland.inventoryApp.app;
 
 import android.content.Context;
 import android.os.Environment;
+import android.util.Log;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.util.HashMap;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import de.phaberland.inventoryApp.data.BulkLoad;
+import de.phaberland.inventoryApp.data.DataSnapshot;
 import de.phaberland.inventoryApp.data.Item;
 import de.phaberland.inventoryApp.data.ItemList;
 import de.phaberland.inventoryApp.data.ItemProvider;
@@ -28,9 +37,16 @@ import de.phaberland.inventoryApp.data.ListProvider;
  * CsvExImporter is used to save and load
  * application data.
  * The data will be stored in csv format.
+ * Items and lists are cached by a StorageBackend, csv is used
+ * to exchange them with the user. The csv file in the application
+ * folder is used by the CsvBackend and read, if no backend could be read.
  * Functions are provided to store and read
  *  - Items and lists
+ *  - Items changed since the last export, to keep another device in sync
  *  - Applications state
+ * Files in the download folder can be gzip compressed, which is
+ * detected when reading them, compressed files are streamed
+ * through java.util.zip without being held in memory.
  *  All the methods are static, so no instance
  *  is needed to use this class.
  *
@@ -38,14 +54,47 @@ import de.phaberland.inventoryApp.data.ListProvider;
  * @version     %I%, %G%
  */
 class CsvExImporter {
+    private static final String TAG = "CsvExImporter";
+
     // how to export
     private static final String FILENAME = "export.csv";
+    private static final String CHANGESFILE = "changes.csv";
     private static final String APPSTATEFILE = "appState.csv";
     private static final String CHARSET = "UTF-8";
+    // files ending with it are written gzip compressed
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final int GZIP_BUFFER_SIZE = 16 * 1024;
 
     // what to export
     private static final int INVENTORY = 0;
     private static final int STATE = 1;
+    // how to import items into the existing ones
+    private static final int MERGE_KEEP_MISSING = 2;
+    private static final int MERGE_REMOVE_MISSING = 3;
+
+    // rough size of a row, to guess the number of rows in a file
+    private static final int BYTES_PER_ROW = 32;
+    // rough size of a row within a compressed file
+    private static final int COMPRESSED_BYTES_PER_ROW = 6;
+
+    // the application state as it was read or written last
+    private static String s_savedState = null;
+
+    /**
+     * GZIPOutputStream leaving the stream it writes to open, as that one
+     * is closed by the SafeFile. Closing it only releases its deflater,
+     * which is needed after writing failed as well.
+     */
+    private static class GzipOutputStream extends GZIPOutputStream {
+        GzipOutputStream(OutputStream out) throws IOException {
+            super(out, GZIP_BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() {
+            def.end();
+        }
+    }
 
     //////////////////////
     // Public functions //
@@ -56,36 +105,83 @@ class CsvExImporter {
      * folder. To be able to do that this function
      * need the permission to access the external
      * file resources.
+     * Everything not saved yet is saved first, so nothing exported
+     * gets lost, if the app is killed afterwards.
      * Be sure to check permission before calling:
      *  - Manifest.permission.WRITE_EXTERNAL_STORAGE
+     * @param compressed true to write a gzip compressed file,
+     *  which is a fraction of the size, false for plain csv
      * @return true when successful, false otherwise
      */
-    static boolean exportCsvToDownloads() {
+    static boolean exportCsvToDownloads(boolean compressed) {
         File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-        File file = new File(downloadDir, FILENAME);
-        return export(file, INVENTORY);
+        File file = new File(downloadDir, compressed ? FILENAME + GZIP_SUFFIX : FILENAME);
+        PersistenceScheduler.getInstance().flush();
+        DataSnapshot snapshot = ItemProvider.getInstance().getSnapshot();
+        if(!export(file, INVENTORY, snapshot)) {
+            return false;
+        }
+        setExportedVersion(snapshot.getModificationCount());
+        return true;
     }
 
     /**
-     * Exports the items and lists to the application files
-     * folder. The data stored here, will be removed, when
-     * the app is uninstalled.
+     * Exports the items changed since the last export to the download
+     * folder, in the same format as all items are exported.
+     * Changed amounts in the lists count as change of the item, items
+     * taken off a list are written with an amount of -1.
+     * Only the changed items are written, so this takes time depending
+     * on the number of changes. The next export of changes starts
+     * after the modification count of the given changes.
+     * Be sure to check permission before calling:
+     *  - Manifest.permission.WRITE_EXTERNAL_STORAGE
+     * @param changes the items changed since the last export
+     * @return true when successful, false otherwise
+     * @see ItemProvider#getChangesSince(long)
+     * @see SqliteBackend#readChangesSince(long)
      */
-    static void exportCsvToCache(Context context) {
-        File cacheDir = context.getFilesDir();
-        File file = new File(cacheDir, FILENAME);
-        export(file, INVENTORY);
+    static boolean exportChangesToDownloads(DataSnapshot changes) {
+        File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+        File file = new File(downloadDir, CHANGESFILE);
+        if(!export(file, INVENTORY, changes)) {
+            return false;
+        }
+        setExportedVersion(changes.getModificationCount());
+        return true;
     }
 
     /**
      * Exports the application state to the application files
      * folder. The data stored here, will be removed, when
      * the app is uninstalled.
+     * Nothing is written, if the state did not change since
+     * it was read or written last.
+     * @return true if the current state is saved, false if writing failed
      */
-    static void exportAppState(Context context) {
+    static boolean exportAppState(Context context) {
+        String state = getStateString();
+        if(state.equals(s_savedState)) {
+            return true;
+        }
         File cacheDir = context.getFilesDir();
         File file = new File(cacheDir, APPSTATEFILE);
-        export(file, STATE);
+        if(export(file, STATE, null)) {
+            s_savedState = state;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Exports the items and lists of the snapshot to the application
+     * files folder, as done by the CsvBackend.
+     * @param snapshot the snapshot of all items and lists
+     * @return true when successful, false otherwise
+     */
+    static boolean exportCsvToCache(Context context, DataSnapshot snapshot) {
+        File cacheDir = context.getFilesDir();
+        File file = new File(cacheDir, FILENAME);
+        return export(file, INVENTORY, snapshot);
     }
 
     /**
@@ -98,20 +194,50 @@ class CsvExImporter {
      * @return true when successful, false otherwise
      */
     static boolean importCsvFromDownloads() {
-        File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-        File file = new File(downloadDir, FILENAME);
-        return importe(file, INVENTORY);
+        return importe(getDownloadFile(FILENAME), INVENTORY);
+    }
+
+    /**
+     * Merges the items and lists from the download folder
+     * into the current ones. Items are matched by name and unit,
+     * only values and amounts differing from the file are changed
+     * and items not existing yet are added. This way a partial
+     * file, like from another device, can be imported cheaply.
+     * Be sure to check permission before calling:
+     *  - Manifest.permission.READ_EXTERNAL_STORAGE
+     * @param keepMissing true to leave items, which are not in the file,
+     *  untouched, false to take them off the lists
+     * @return true when successful, false otherwise
+     * @see BulkLoad#merge(boolean)
+     */
+    static boolean mergeCsvFromDownloads(boolean keepMissing) {
+        return importe(getDownloadFile(FILENAME), keepMissing ? MERGE_KEEP_MISSING : MERGE_REMOVE_MISSING);
+    }
+
+    /**
+     * Applies the changes exported by another device from the download
+     * folder. The changed items are merged into the current ones,
+     * all other items are left untouched, so this takes time
+     * depending on the number of changes.
+     * Be sure to check permission before calling:
+     *  - Manifest.permission.READ_EXTERNAL_STORAGE
+     * @return true when successful, false otherwise
+     * @see #exportChangesToDownloads(DataSnapshot)
+     */
+    static boolean importChangesFromDownloads() {
+        return importe(getDownloadFile(CHANGESFILE), MERGE_KEEP_MISSING);
     }
 
     /**
      * Import the items and lists from the application files
      * folder. The data stored here, will be removed, when
      * the app is uninstalled.
+     * @return true when successful, false otherwise
      */
-    static void importCsvFromCache(Context context) {
+    static boolean importCsvFromCache(Context context) {
         File cacheDir = context.getFilesDir();
         File file = new File(cacheDir, FILENAME);
-        importe(file, INVENTORY);
+        return importe(file, INVENTORY);
     }
 
     /**
@@ -129,69 +255,114 @@ class CsvExImporter {
     // Internal functions //
     ////////////////////////
 
+    /**
+     * Returns the file of the given name in the download folder,
+     * or its compressed version, whichever was written last.
+     * @param name name of the uncompressed file
+     * @return the file to read, which might not exist
+     */
+    private static File getDownloadFile(String name) {
+        File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+        File plain = new File(downloadDir, name);
+        File compressed = new File(downloadDir, name + GZIP_SUFFIX);
+        if(compressed.exists() && (!plain.exists() || compressed.lastModified() > plain.lastModified())) {
+            return compressed;
+        }
+        return plain;
+    }
+
     /**
      * Creates an OutputStreamWriter instance for
      * the specified file and depending on what to export
      * will call the corresponding write function to
      * write to the stream.
+     * The file is written through a SafeFile, so it keeps
+     * its last content, until the new one is complete.
+     * The application state also gets a checksum, the exported
+     * items do not, as they are read by other applications.
+     * Files ending with .gz are gzip compressed while writing.
      * This function also takes care of the exception
      * handling.
      * @param file File to write to
      * @param what What to write (0=inventory, 1=application state)
+     * @param snapshot the items to write for the inventory, null for the application state
      * @return true when successful, false otherwise
+     * @see SafeFile
      */
-    private static boolean export(File file, int what) {
+    private static boolean export(File file, int what, DataSnapshot snapshot) {
+        SafeFile safeFile = new SafeFile(file, what == STATE);
+        OutputStream out = null;
         try {
-            FileOutputStream fos = new FileOutputStream(file);
-            OutputStreamWriter streamWriter = new OutputStreamWriter(fos, CHARSET);
-            // finally write the data
-            if(what == INVENTORY) {
-                writeInventory(streamWriter);
-            } else {
-                writeState(streamWriter);
+            out = safeFile.startWrite();
+            GzipOutputStream gzip = null;
+            try {
+                if(file.getName().endsWith(GZIP_SUFFIX)) {
+                    gzip = new GzipOutputStream(out);
+                }
+                OutputStream target = gzip != null ? gzip : out;
+                // finally write the data
+                if(what == INVENTORY && gzip != null) {
+                    // encoded straight into the deflater, without a writer in between
+                    writeInventory(target, snapshot);
+                } else {
+                    OutputStreamWriter streamWriter = new OutputStreamWriter(target, CHARSET);
+                    if(what == INVENTORY) {
+                        writeInventory(streamWriter, snapshot);
+                    } else {
+                        writeState(streamWriter);
+                    }
+                    streamWriter.flush();
+                }
+                if(gzip != null) {
+                    // writes the trailer
+                    gzip.finish();
+                }
+            } finally {
+                if(gzip != null) {
+                    gzip.close();
+                }
             }
-
-            streamWriter.flush();
-            streamWriter.close();
-
-            fos.flush();
-            fos.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return false;
         } catch (IOException e) {
             e.printStackTrace();
+            safeFile.failWrite(out);
             return false;
         }
-        return true;
+        return safeFile.finishWrite(out);
     }
 
     /**
-     * Creates a BufferedReader instance for
+     * Creates an InputStreamReader instance for
      * the specified file and depending on what to import
      * will call the corresponding read function to read
      * from the stream.
      * This function also takes care of the exception
      * handling.
      * @param file File to read from
-     * @param what What to read (0=inventory, 1=application state)
+     * @param what What to read (0=inventory, 1=application state,
+     *  2=merge inventory keeping missing items, 3=merge inventory removing missing items)
      * @return true when successful, false otherwise
      */
     private static boolean importe(File file, int what) {
         try {
-            FileInputStream inputStream = new FileInputStream(file);
-
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, CHARSET);
-            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
+            if(what == STATE) {
+                // verified against its checksum, falls back to the previous state
+                ByteBuffer content = new SafeFile(file, true).read();
+                if(content == null) {
+                    return false;
+                }
+                byte[] bytes = new byte[content.remaining()];
+                content.get(bytes);
+                readState(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), CHARSET)));
+                return true;
+            }
 
             // finally read
+            BulkLoad load = readInventory(file);
             if(what == INVENTORY) {
-                readInventory(bufferedReader);
+                commitInventory(load);
             } else {
-                readState(bufferedReader);
+                load.merge(what == MERGE_KEEP_MISSING);
             }
-
-            inputStream.close();
         }
         catch (FileNotFoundException e) {
             e.printStackTrace();
@@ -204,89 +375,209 @@ class CsvExImporter {
     }
 
     /**
-     * Loops through all the Items in ItemProvider and adds
+     * Loops through all the Items in a snapshot of the ItemProvider and adds
      * their members to the file in a csv format.
      * Also it adds the values in the existing lists (-1 if not in the list)
      * The format will be:
      *  id, name, unit, critValue, defValue, inventoryAmount, shopAmount
-     * @param streamWriter an OutputStreamWriter instance to write to
+     * The snapshot already holds the list amounts next to the items,
+     * so every row is written without any lookup. Names are quoted as needed.
+     * @param writer a Writer instance to write to, which does not need to be buffered
+     * @param snapshot the snapshot of the items to write
+     * @throws IOException if something went wrong when writing
+     * @see CsvWriter
+     */
+    private static void writeInventory(Writer writer, DataSnapshot snapshot) throws IOException {
+        writeInventory(new CsvWriter(writer), snapshot);
+    }
+
+    /**
+     * Like writeInventory(Writer, DataSnapshot), but writes the rows utf-8
+     * encoded to the stream, without an OutputStreamWriter in between.
+     * @param stream an OutputStream to write to, which does not need to be buffered
+     * @param snapshot the snapshot of the items to write
+     * @throws IOException if something went wrong when writing
+     * @see #writeInventory(Writer, DataSnapshot)
+     */
+    private static void writeInventory(OutputStream stream, DataSnapshot snapshot) throws IOException {
+        writeInventory(new CsvWriter(stream), snapshot);
+    }
+
+    /**
+     * Writes the rows of all items in the snapshot through the CsvWriter.
+     * @param csv the CsvWriter to write to
+     * @param snapshot the snapshot of the items to write
      * @throws IOException if something went wrong when writing
      */
-    private static void writeInventory(OutputStreamWriter streamWriter) throws IOException {
-        for(HashMap.Entry<Integer, Item> entry :ItemProvider.getInstance().getAllItems().entrySet()) {
+    private static void writeInventory(CsvWriter csv, DataSnapshot snapshot) throws IOException {
+        int count = snapshot.size();
+        for(int i = 0; i < count; i++) {
             // item properties  (0->id,1->name,2->unit,3->crit,4->def,5->inv,6->shop)
-            String line = entry.getValue().getM_id()
-                    + "," + entry.getValue().getM_name()
-                    + "," + entry.getValue().getM_unit()
-                    + "," + entry.getValue().getM_critValue()
-                    + "," + entry.getValue().getM_defValue()
-                    // list inventory amounts
-                    + "," + ListProvider.getInstance().getListById(ItemList.INVENTORY_LIST_ID).getAmountForId(entry.getKey())
-                    // also add shopping, to get the list
-                    + "," + ListProvider.getInstance().getListById(ItemList.SHOPPING_LIST_ID).getAmountForId(entry.getKey())
-                    // endl
-                    + System.getProperty("line.separator");
-            streamWriter.write(line);
+            csv.writeField(snapshot.getId(i));
+            csv.writeField(snapshot.getName(i));
+            csv.writeField(snapshot.getUnit(i).name());
+            csv.writeField(snapshot.getCritValue(i));
+            csv.writeField(snapshot.getDefValue(i));
+            // list inventory amounts
+            csv.writeField(snapshot.getInventoryAmount(i));
+            // also add shopping, to get the list
+            csv.writeField(snapshot.getShoppingAmount(i));
+            csv.endRow();
         }
+        csv.flush();
+    }
+
+    /**
+     * Remembers the version of the data exported last, so the next
+     * export of changes starts from there. The version has to survive
+     * a restart, so the application state is saved soon.
+     * @param version the modification count of the exported data
+     */
+    private static void setExportedVersion(long version) {
+        InventoryApp.getAppState().exportedVersion = version;
+        PersistenceScheduler.getInstance().requestSave();
     }
 
     /**
      * Writes the application state information to the specified file
+     * The format will be:
+     *  currentSelectedList, nextItemId, exportedVersion, storageBackend
      * @param streamWriter an OutputStreamWriter instance to write to
      * @throws IOException if something went wrong when writing
      */
     private static void writeState(OutputStreamWriter streamWriter) throws IOException {
+        streamWriter.write(getStateString());
+    }
+
+    /**
+     * @return the application state, as it is written to the file
+     */
+    private static String getStateString() {
         InventoryApp.AppState state = InventoryApp.getAppState();
-        String stringState = Integer.toString(state.currentSelectedList);
-        streamWriter.write(stringState.trim());
+        return state.currentSelectedList + "," + ItemProvider.getInstance().getNextId()
+                + "," + state.exportedVersion + "," + state.storageBackend;
     }
 
     /**
-     * Reads from the file line by line, until no readLine returns null.
-     * Parses the line for the items and their corresponding values.
-     * If a value for a list is -1 the item will not be added to the list.
-     * The format will be:
-     *  id(0), name(1), unit(2), critValue(3), defValue(4), inventoryAmount(5), shopAmount(6)
-     * @param bufferedReader a BufferedReader instance to read from
+     * Reads the items and lists from the file into a BulkLoad,
+     * without changing the current ones.
+     * Big files are read by the ParallelCsvReader on all cores.
+     * Compressed files are decompressed while reading on a single
+     * thread, as they can not be split without holding them in memory.
+     * @param file the file to read
+     * @return the load containing the items of the file
      * @throws IOException if something went wrong when reading
+     * @see #readRows(CsvReader, BulkLoad)
+     * @see ParallelCsvReader
      */
-    private static void readInventory(BufferedReader bufferedReader) throws IOException {
-        String receiveString;
+    private static BulkLoad readInventory(File file) throws IOException {
+        InputStream inputStream = openInventory(file);
+        try {
+            boolean compressed = inputStream instanceof GZIPInputStream;
+            if(!compressed && ParallelCsvReader.isWorthIt(file)) {
+                return ParallelCsvReader.read(file);
+            }
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, CHARSET);
+            long bytesPerRow = compressed ? COMPRESSED_BYTES_PER_ROW : BYTES_PER_ROW;
+            int expectedRows = (int) Math.min(file.length() / bytesPerRow, Integer.MAX_VALUE);
+            BulkLoad load = ItemProvider.getInstance().beginBulkLoad(expectedRows);
+            readRows(new CsvReader(inputStreamReader), load);
+            return load;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Opens a file of items for reading. If the file starts with the
+     * gzip magic bytes, it is decompressed while reading, whatever
+     * the name of the file is.
+     * @param file the file to open
+     * @return a GZIPInputStream for compressed files, a plain stream otherwise
+     * @throws IOException if the file could not be opened
+     */
+    private static InputStream openInventory(File file) throws IOException {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(file), GZIP_BUFFER_SIZE);
+        try {
+            inputStream.mark(2);
+            int magic = inputStream.read() | (inputStream.read() << 8);
+            inputStream.reset();
+            if(magic == GZIPInputStream.GZIP_MAGIC) {
+                return new GZIPInputStream(inputStream, GZIP_BUFFER_SIZE);
+            }
+            return inputStream;
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
 
+    /**
+     * Replaces the current items and lists with the ones of the load.
+     * @param load the items and lists read from a file
+     */
+    static void commitInventory(BulkLoad load) {
         ItemProvider.getInstance().clear();
         ListProvider.getInstance().clear();
+        load.commit();
+    }
 
-        while ( (receiveString = bufferedReader.readLine()) != null ) {
-            String[] values = receiveString.split(",");
+    /**
+     * Reads row by row using a CsvReader, until the end of the input.
+     * Parses the row for the items and their corresponding values.
+     * If a value for a list is -1 the item will not be added to the list.
+     * Rows, which can not be read, are skipped and logged with their line number.
+     * The format will be:
+     *  id(0), name(1), unit(2), critValue(3), defValue(4), inventoryAmount(5), shopAmount(6)
+     * This does not change any data, so it can be called from several threads
+     * at once, every one with its own reader and load.
+     * @param csv the CsvReader to read from
+     * @param load the BulkLoad to add the items to
+     * @throws IOException if something went wrong when reading
+     * @see CsvReader
+     */
+    static void readRows(CsvReader csv, BulkLoad load) throws IOException {
+        while (csv.nextRow()) {
             // (0->id,1->name,2->unit,3->crit,4->def,5->inv,6->shop)
-            if(values.length != 7) {
+            if(csv.isMalformed()) {
+                Log.w(TAG, "line " + csv.getLineNumber() + ": " + csv.getError());
+                continue;
+            }
+            if(csv.getFieldCount() != 7) {
+                Log.w(TAG, "line " + csv.getLineNumber() + ": expected 7 fields, found " + csv.getFieldCount());
                 continue;
             }
             Item.UNIT unit = Item.UNIT.PIECE;
-            if(values[2].equals(Item.UNIT.GRAMM.toString())) {
+            if(csv.fieldEquals(2, Item.UNIT.GRAMM.toString())) {
                 unit = Item.UNIT.GRAMM;
-            } else if(values[2].equals(Item.UNIT.MILILITER.toString())) {
+            } else if(csv.fieldEquals(2, Item.UNIT.MILILITER.toString())) {
                 unit = Item.UNIT.MILILITER;
             }
-            int itemId = ItemProvider.getInstance().addItem(values[1], unit, false);
-            Item item = ItemProvider.getInstance().getItemById(itemId);
-            int crit = Integer.parseInt(values[3]);
-            item.setM_critValue(crit);
-            item.setM_defValue(Integer.parseInt(values[4]));
-            // inventory
-            if(!values[5].isEmpty() && !values[5].equals("-1")) {
-                ListProvider.getInstance().getListById(ItemList.INVENTORY_LIST_ID).add(item, Integer.parseInt(values[5]));
-            }
-            // shopping
-            if(!values[6].isEmpty() && !values[6].equals("-1")) {
-                ListProvider.getInstance().getListById(ItemList.SHOPPING_LIST_ID).add(item, Integer.parseInt(values[6]));
+            int id;
+            int crit;
+            int def;
+            int inventoryAmount;
+            int shopAmount;
+            try {
+                id = csv.getInt(0);
+                crit = csv.getInt(3);
+                def = csv.getInt(4);
+                inventoryAmount = csv.isEmpty(5) ? -1 : csv.getInt(5);
+                shopAmount = csv.isEmpty(6) ? -1 : csv.getInt(6);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "line " + csv.getLineNumber() + ": " + e.getMessage());
+                continue;
             }
+            // keep the id from the file, so references to the item stay valid
+            load.add(id, csv.getString(1), unit, crit, def, inventoryAmount, shopAmount);
         }
-        ItemProvider.getInstance().sortItems();
     }
 
     /**
      * Reads the application state information from the specified file
+     * The format will be:
+     *  currentSelectedList(0), nextItemId(1), exportedVersion(2), storageBackend(3)
+     * Older files lack the values at the end.
      * @param bufferedReader a BufferedReader instance to read from
      * @throws IOException if something went wrong when reading
      */
@@ -295,10 +586,20 @@ class CsvExImporter {
         String receiveString;
         if ( (receiveString = bufferedReader.readLine()) != null ) {
             receiveString = receiveString.trim();
+            s_savedState = receiveString;
             // if we have a version of the State.csv with more states, we want to make sure to get the one we need.
             String[] values = receiveString.split(",");
             if(values.length > 1) {
                 receiveString = values[0];
+                if(!values[1].isEmpty()) {
+                    state.nextItemId = Integer.parseInt(values[1]);
+                }
+            }
+            if(values.length > 2 && !values[2].isEmpty()) {
+                state.exportedVersion = Long.parseLong(values[2]);
+            }
+            if(values.length > 3 && !values[3].isEmpty()) {
+                state.storageBackend = values[3];
             }
             if(!receiveString.isEmpty()) {
                 state.currentSelectedList = Integer.parseInt(receiveString);
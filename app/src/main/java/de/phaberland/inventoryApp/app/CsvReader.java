@@ -0,0 +1,322 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * CsvReader reads csv data row by row, as described in RFC 4180.
+ * Fields may be quoted with double quotes, quoted fields may contain
+ * commas, line breaks and quotes, which are doubled ("").
+ * Lines may end with CRLF, LF or CR.
+ *
+ * The input is read in chunks into a reused buffer and the fields of
+ * the current row are kept in another reused buffer, so the memory
+ * needed does not depend on the size of the input. Numbers are parsed
+ * from the buffer directly, Strings are only created when asked for.
+ *
+ * Rows, which are not well formed, like a quote within an unquoted field
+ * or a missing closing quote, are still returned but marked as malformed,
+ * so the caller can report them with their line number.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+class CsvReader {
+    private static final int BUFFER_SIZE = 8192;
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    private final Reader m_reader;
+    private final char[] m_buffer;
+    private int m_pos;
+    private int m_limit;
+
+    // content of the fields of the current row, one after another
+    private char[] m_chars;
+    private int m_charCount;
+    // start and end of every field within m_chars
+    private int[] m_fieldStarts;
+    private int[] m_fieldEnds;
+    private int m_fieldCount;
+
+    private int m_line;
+    private int m_rowLine;
+    private String m_error;
+
+    /**
+     * Constructs a CsvReader, reading from the given reader.
+     * The reader does not need to be buffered.
+     * @param reader the reader to read the csv data from
+     */
+    CsvReader(Reader reader) {
+        this(reader, 1);
+    }
+
+    /**
+     * Constructs a CsvReader for a part of a file, which does not
+     * start at its first line, so rows are reported with the line
+     * number within the whole file.
+     * @param reader the reader to read the csv data from
+     * @param firstLine the line number of the first line of the reader
+     */
+    CsvReader(Reader reader, int firstLine) {
+        m_reader = reader;
+        m_buffer = new char[BUFFER_SIZE];
+        m_chars = new char[256];
+        m_fieldStarts = new int[16];
+        m_fieldEnds = new int[16];
+        m_line = firstLine;
+    }
+
+    /**
+     * Reads the next row. Empty lines are skipped.
+     * @return true if a row was read, false at the end of the input
+     * @throws IOException if reading from the reader failed
+     */
+    boolean nextRow() throws IOException {
+        int c;
+        // skip empty lines
+        do {
+            c = read();
+            if(c == '\r' || c == '\n') {
+                endOfLine(c);
+            }
+        } while(c == '\r' || c == '\n');
+        if(c == -1) {
+            return false;
+        }
+
+        m_charCount = 0;
+        m_fieldCount = 0;
+        m_error = null;
+        m_rowLine = m_line;
+
+        int fieldStart = 0;
+        boolean quoted = false;
+        boolean afterQuote = false;
+        boolean fieldBegin = true;
+        while(true) {
+            if(c == -1) {
+                if(quoted) {
+                    setError("missing closing quote");
+                }
+                addField(fieldStart);
+                return true;
+            }
+            if(quoted) {
+                if(c == QUOTE) {
+                    int next = read();
+                    if(next == QUOTE) {
+                        append(QUOTE);
+                    } else {
+                        quoted = false;
+                        afterQuote = true;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    if(c == '\r' || c == '\n') {
+                        endOfLine(c);
+                        append('\n');
+                        c = read();
+                        continue;
+                    }
+                    append((char) c);
+                }
+            } else if(c == SEPARATOR) {
+                addField(fieldStart);
+                fieldStart = m_charCount;
+                afterQuote = false;
+                fieldBegin = true;
+                c = read();
+                continue;
+            } else if(c == '\r' || c == '\n') {
+                endOfLine(c);
+                addField(fieldStart);
+                return true;
+            } else if(c == QUOTE && fieldBegin) {
+                quoted = true;
+            } else {
+                if(c == QUOTE) {
+                    setError("quote within unquoted field " + (m_fieldCount + 1));
+                } else if(afterQuote) {
+                    setError("text after closing quote in field " + (m_fieldCount + 1));
+                }
+                append((char) c);
+            }
+            fieldBegin = false;
+            c = read();
+        }
+    }
+
+    /**
+     * @return the number of fields in the current row
+     */
+    int getFieldCount() {
+        return m_fieldCount;
+    }
+
+    /**
+     * @return the line the current row starts at, starting with 1
+     */
+    int getLineNumber() {
+        return m_rowLine;
+    }
+
+    /**
+     * @return true if the current row is not well formed
+     */
+    boolean isMalformed() {
+        return m_error != null;
+    }
+
+    /**
+     * @return a description of what is wrong with the current row, null if it is fine
+     */
+    String getError() {
+        return m_error;
+    }
+
+    /**
+     * @param field index of the field
+     * @return the content of the field as a String
+     */
+    String getString(int field) {
+        return new String(m_chars, m_fieldStarts[field], m_fieldEnds[field] - m_fieldStarts[field]);
+    }
+
+    /**
+     * @param field index of the field
+     * @return true if the field is empty
+     */
+    boolean isEmpty(int field) {
+        return m_fieldStarts[field] == m_fieldEnds[field];
+    }
+
+    /**
+     * Compares the content of the field to the text,
+     * without creating a String for the field.
+     * @param field index of the field
+     * @param text text to compare with
+     * @return true if the content of the field equals the text
+     */
+    boolean fieldEquals(int field, String text) {
+        int start = m_fieldStarts[field];
+        int length = m_fieldEnds[field] - start;
+        if(length != text.length()) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(m_chars[start + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the content of the field as decimal integer,
+     * surrounding spaces are ignored.
+     * @param field index of the field
+     * @return the number in the field
+     * @throws NumberFormatException if the field does not contain an integer
+     */
+    int getInt(int field) {
+        int pos = m_fieldStarts[field];
+        int end = m_fieldEnds[field];
+        while(pos < end && m_chars[pos] == ' ') {
+            pos++;
+        }
+        while(end > pos && m_chars[end - 1] == ' ') {
+            end--;
+        }
+        boolean negative = false;
+        if(pos < end && (m_chars[pos] == '-' || m_chars[pos] == '+')) {
+            negative = m_chars[pos] == '-';
+            pos++;
+        }
+        if(pos == end) {
+            throw new NumberFormatException("field " + (field + 1) + " is not a number");
+        }
+        // accumulate negative, so Integer.MIN_VALUE can be parsed
+        long result = 0;
+        for(; pos < end; pos++) {
+            char c = m_chars[pos];
+            if(c < '0' || c > '9') {
+                throw new NumberFormatException("field " + (field + 1) + " is not a number");
+            }
+            result = result * 10 - (c - '0');
+            if(result < Integer.MIN_VALUE) {
+                throw new NumberFormatException("field " + (field + 1) + " is out of range");
+            }
+        }
+        if(!negative) {
+            if(result == Integer.MIN_VALUE) {
+                throw new NumberFormatException("field " + (field + 1) + " is out of range");
+            }
+            result = -result;
+        }
+        return (int) result;
+    }
+
+    //////////////
+    // internal //
+    //////////////
+
+    private int read() throws IOException {
+        if(m_pos == m_limit) {
+            m_limit = m_reader.read(m_buffer, 0, m_buffer.length);
+            m_pos = 0;
+            if(m_limit <= 0) {
+                m_limit = 0;
+                return -1;
+            }
+        }
+        return m_buffer[m_pos++];
+    }
+
+    /**
+     * Consumes the rest of a line break, a CR followed by LF counts as one.
+     * @param c the first character of the line break, which was already read
+     */
+    private void endOfLine(int c) throws IOException {
+        m_line++;
+        if(c == '\r') {
+            int next = read();
+            // not part of the line break, put it back
+            if(next != '\n' && next != -1) {
+                m_pos--;
+            }
+        }
+    }
+
+    private void append(char c) {
+        if(m_charCount == m_chars.length) {
+            m_chars = Arrays.copyOf(m_chars, m_chars.length * 2);
+        }
+        m_chars[m_charCount++] = c;
+    }
+
+    private void addField(int start) {
+        if(m_fieldCount == m_fieldStarts.length) {
+            m_fieldStarts = Arrays.copyOf(m_fieldStarts, m_fieldCount * 2);
+            m_fieldEnds = Arrays.copyOf(m_fieldEnds, m_fieldCount * 2);
+        }
+        m_fieldStarts[m_fieldCount] = start;
+        m_fieldEnds[m_fieldCount] = m_charCount;
+        m_fieldCount++;
+    }
+
+    private void setError(String error) {
+        if(m_error == null) {
+            m_error = error;
+        }
+    }
+}
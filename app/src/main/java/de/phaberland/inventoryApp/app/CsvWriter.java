@@ -0,0 +1,240 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * CsvWriter writes csv data row by row, as described in RFC 4180.
+ * Fields containing a separator, quote or line break are quoted,
+ * quotes within are doubled.
+ *
+ * All output goes through a single reused char buffer, numbers
+ * are converted into the buffer digit by digit, so writing a row
+ * does not create any objects. The buffer is handed to the
+ * underlying writer, once it is full. Written to a stream, the buffer
+ * is encoded to utf-8 into a reused byte buffer, so no strings or
+ * arrays are created either.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ * @see CsvReader
+ */
+class CsvWriter {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final Writer m_writer;
+    private final OutputStream m_stream;
+    private final char[] m_buffer;
+    // utf-8 encoded content of m_buffer, only used when writing to a stream
+    private final byte[] m_bytes;
+    private int m_count;
+    private boolean m_rowStarted;
+
+    /**
+     * Constructs a CsvWriter, writing to the given writer.
+     * The writer does not need to be buffered.
+     * @param writer the writer to write the csv data to
+     */
+    CsvWriter(Writer writer) {
+        m_writer = writer;
+        m_stream = null;
+        m_buffer = new char[BUFFER_SIZE];
+        m_bytes = null;
+    }
+
+    /**
+     * Constructs a CsvWriter, writing utf-8 encoded to the given stream.
+     * The stream does not need to be buffered.
+     * @param stream the stream to write the csv data to
+     */
+    CsvWriter(OutputStream stream) {
+        m_writer = null;
+        m_stream = stream;
+        m_buffer = new char[BUFFER_SIZE];
+        // at most 3 bytes per char, a surrogate pair takes 4 bytes for 2 chars
+        m_bytes = new byte[BUFFER_SIZE * 3];
+    }
+
+    /**
+     * Writes a text field, quoted if needed.
+     * @param value the text to write
+     * @throws IOException if writing to the writer failed
+     */
+    void writeField(String value) throws IOException {
+        startField();
+        boolean needsQuotes = false;
+        int length = value.length();
+        for(int i = 0; i < length && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == SEPARATOR || c == QUOTE || c == '\n' || c == '\r';
+        }
+        if(!needsQuotes) {
+            append(value);
+            return;
+        }
+        append(QUOTE);
+        for(int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if(c == QUOTE) {
+                append(QUOTE);
+            }
+            append(c);
+        }
+        append(QUOTE);
+    }
+
+    /**
+     * Writes a number field.
+     * @param value the number to write
+     * @throws IOException if writing to the writer failed
+     */
+    void writeField(int value) throws IOException {
+        startField();
+        // 11 chars are enough for any int including the sign
+        if(m_count + 11 > m_buffer.length) {
+            flushBuffer();
+        }
+        if(value == Integer.MIN_VALUE) {
+            append("-2147483648");
+            return;
+        }
+        if(value < 0) {
+            m_buffer[m_count++] = '-';
+            value = -value;
+        }
+        int end = m_count + digits(value);
+        int pos = end;
+        do {
+            m_buffer[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while(value != 0);
+        m_count = end;
+    }
+
+    /**
+     * Ends the current row.
+     * @throws IOException if writing to the writer failed
+     */
+    void endRow() throws IOException {
+        append(LINE_SEPARATOR);
+        m_rowStarted = false;
+    }
+
+    /**
+     * Writes the buffered data to the underlying writer and flushes it.
+     * @throws IOException if writing to the writer failed
+     */
+    void flush() throws IOException {
+        if(m_writer != null) {
+            flushBuffer();
+            m_writer.flush();
+        } else {
+            encode(m_count);
+            m_stream.flush();
+        }
+    }
+
+    //////////////
+    // internal //
+    //////////////
+
+    private void startField() throws IOException {
+        if(m_rowStarted) {
+            append(SEPARATOR);
+        }
+        m_rowStarted = true;
+    }
+
+    private void append(char c) throws IOException {
+        if(m_count == m_buffer.length) {
+            flushBuffer();
+        }
+        m_buffer[m_count++] = c;
+    }
+
+    private void append(String text) throws IOException {
+        int length = text.length();
+        int pos = 0;
+        while(pos < length) {
+            if(m_count == m_buffer.length) {
+                flushBuffer();
+            }
+            int n = Math.min(length - pos, m_buffer.length - m_count);
+            text.getChars(pos, pos + n, m_buffer, m_count);
+            m_count += n;
+            pos += n;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if(m_writer != null) {
+            if(m_count > 0) {
+                m_writer.write(m_buffer, 0, m_count);
+                m_count = 0;
+            }
+        } else if(m_count > 0 && Character.isHighSurrogate(m_buffer[m_count - 1])) {
+            // the low surrogate is not buffered yet, keep the pair together
+            encode(m_count - 1);
+        } else {
+            encode(m_count);
+        }
+    }
+
+    /**
+     * Encodes the first chars of the buffer to utf-8, writes them to the
+     * stream and moves the remaining chars to the start of the buffer.
+     * Surrogates not forming a pair are written as '?'.
+     * @param length number of chars to encode
+     * @throws IOException if writing to the stream failed
+     */
+    private void encode(int length) throws IOException {
+        char[] chars = m_buffer;
+        byte[] bytes = m_bytes;
+        int n = 0;
+        for(int i = 0; i < length; i++) {
+            char c = chars[i];
+            if(c < 0x80) {
+                bytes[n++] = (byte) c;
+            } else if(c < 0x800) {
+                bytes[n++] = (byte) (0xC0 | (c >> 6));
+                bytes[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                int codePoint = Character.toCodePoint(c, chars[++i]);
+                bytes[n++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[n++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if(c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                bytes[n++] = (byte) '?';
+            } else {
+                bytes[n++] = (byte) (0xE0 | (c >> 12));
+                bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        if(n > 0) {
+            m_stream.write(bytes, 0, n);
+        }
+        System.arraycopy(chars, length, chars, 0, m_count - length);
+        m_count -= length;
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while(value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
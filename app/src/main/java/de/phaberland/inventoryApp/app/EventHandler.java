@@ -102,15 +102,12 @@ public class EventHandler implements View.OnClickListener, YesNoCallback {
      * Handles positive button press of SimpleYesNoDialog. 
      * This is called when an item gets removed from the shopping list.
      * So after pressing yes the item will get removed from the shopping 
-     * list and the mainScreen need to be updated
+     * list, the mainScreen follows the change by itself
      * @see DialogFragmentProvider#createSimpleYesNoDialog(String, YesNoCallback, Context) 
      */
     @Override
     public void yesClicked() {
         ListProvider.getInstance().getListById(ItemList.SHOPPING_LIST_ID).remove(m_params.m_itemId);
-        if(m_params.m_mainScreen != null) {
-            m_params.m_mainScreen.update();
-        }
     }
 
     ///////////////////////////////////
@@ -129,7 +126,7 @@ public class EventHandler implements View.OnClickListener, YesNoCallback {
         if(item == null) {
             return;
         }
-        RemoveFromInventoryDialog dlg = new RemoveFromInventoryDialog(m_params.m_mainScreen, m_params.m_itemId);
+        RemoveFromInventoryDialog dlg = new RemoveFromInventoryDialog(m_params.m_itemId);
         dlg.show(m_params.m_mainScreen.getSupportFragmentManager(), m_params.m_mainScreen.getString(R.string.tag_remove_item_dlg));
     }
 
@@ -165,7 +162,7 @@ public class EventHandler implements View.OnClickListener, YesNoCallback {
         if(item == null) {
             return;
         }
-        AddFromShoppingDialog dlg = new AddFromShoppingDialog(m_params.m_mainScreen, m_params.m_itemId);
+        AddFromShoppingDialog dlg = new AddFromShoppingDialog(m_params.m_itemId);
         dlg.show(m_params.m_mainScreen.getSupportFragmentManager(), m_params.m_mainScreen.getString(R.string.tag_add_item_dlg));
     }
 }
@@ -15,9 +15,8 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import de.phaberland.inventoryApp.BuildConfig;
-import de.phaberland.inventoryApp.data.ItemList;
-import de.phaberland.inventoryApp.data.ItemProvider;
-import de.phaberland.inventoryApp.data.ListProvider;
+import de.phaberland.inventoryApp.interfaces.LoadCallback;
+import de.phaberland.inventoryApp.interfaces.StorageCallback;
 
 /**
  * InventoryApp is the main class of the InventoryApplication.
@@ -37,9 +36,18 @@ public class InventoryApp {
     static class AppState {
         // todo: add more stuff that we want to save, when exiting the app like settings, user data etc...
         int currentSelectedList;
+        // the next id to be handed out for new items
+        int nextItemId;
+        // modification count of the data exported last, the next
+        // export of changes contains the changes after it
+        volatile long exportedVersion;
+        // name of the StorageBackend the data is stored by
+        volatile String storageBackend = StorageBackend.BINARY;
     }
     private static AppState m_appState;
     private final Activity m_activity;
+    // the callback passed to init, until deinit
+    private LoadCallback m_loadCallback;
 
     /**
      * Constucts the InventoryApp object.
@@ -58,36 +66,58 @@ public class InventoryApp {
     /////////////////
 
     /**
-     * Initializes the Providers and triggers the import
-     * of application state and items/lists from the
-     * application directory.
-     * @see ListProvider
-     * @see ItemProvider
+     * Waits for the application data, which is loaded once per process
+     * by the InventoryApplication. When the activity is started again,
+     * the data is already loaded and the callback is called right away,
+     * otherwise it is called on the main thread, once the lists can be used.
+     * The alphabetical order and search index of the items might still be
+     * built afterwards, anything using them before builds the rest right away.
+     * @param callback the callback to inform, once the data can be used
+     * @see InventoryApplication
      */
-    public void init() {
-        // init providers
-        ItemProvider.getInstance().init();
-        ListProvider.getInstance().init();
-
-        // read from app directory
-        if(!CsvExImporter.importAppState(m_activity)) {
-            m_appState = new AppState();
-            m_appState.currentSelectedList = ItemList.INVENTORY_LIST_ID;
-        }
-        CsvExImporter.importCsvFromCache(m_activity);
+    public void init(LoadCallback callback) {
+        m_loadCallback = callback;
+        getApplication().whenLoaded(callback);
     }
 
     /**
-     * Writes the current application data to file.
-     * Using the serializer the application state information will be written to the file system.
-     * Also the contents of ItemProvider and ListProvider will be written to the file system,
-     * for later retrieval
-     * @see ListProvider
-     * @see ItemProvider
+     * Has everything not saved yet written in the background right away.
+     * The data stays in memory for the next start of the activity.
+     * The main thread does not wait for the file system.
+     * The callback passed to init is not called anymore, so the
+     * activity is not kept, if the data is still being loaded.
+     * @see PersistenceScheduler
      */
     public void deinit() {
-        CsvExImporter.exportAppState(m_activity);
-        CsvExImporter.exportCsvToCache(m_activity);
+        if(m_loadCallback != null) {
+            getApplication().stopWaiting(m_loadCallback);
+            m_loadCallback = null;
+        }
+        getApplication().saveSoon();
+    }
+
+    /**
+     * Chooses how the data is stored within the application files. The data
+     * is written to the new backend in the background and read from it on
+     * the next start, the previous backend is used until then, or if
+     * writing it failed.
+     * @param name one of StorageBackend.CSV, BINARY or SQLITE
+     * @param callback the callback informed on the main thread, once the switch is done
+     * @see StorageBackend
+     */
+    public void setStorageBackend(String name, StorageCallback callback) {
+        getApplication().setStorageBackend(name, callback);
+    }
+
+    /**
+     * @return the name of the StorageBackend the data is stored by
+     */
+    public String getStorageBackend() {
+        return m_appState.storageBackend;
+    }
+
+    private InventoryApplication getApplication() {
+        return (InventoryApplication) m_activity.getApplication();
     }
 
     ///////////////////////////////////
@@ -135,6 +165,62 @@ public class InventoryApp {
         return false;
     }
 
+    /**
+     * Tries to merge a csv file from Downloads directory into the current data.
+     * Items are matched by name and unit, only what differs from the file is
+     * changed and items not in the file are left untouched, so a partial
+     * file from another device can be imported without losing anything.
+     * The function will check the permission to read from external storage using
+     * checkPermissions function with READ_EXTERNAL_STORAGE permission.
+     *
+     * @return true if the cvs file was merged successfully, false otherwise
+     * @see #checkPermission(String)
+     * @see CsvExImporter#mergeCsvFromDownloads(boolean)
+     */
+    public boolean mergeCsv() {
+        if(checkPermission(Manifest.permission.READ_EXTERNAL_STORAGE)) {
+            return CsvExImporter.mergeCsvFromDownloads(true);
+        }
+        return false;
+    }
+
+    /**
+     * Tries to export the items changed since the last export to a csv file in
+     * Downloads directory, which is applied on another device by importChanges.
+     * Only the changes are written, so devices are kept in sync without
+     * exchanging all items every time. Format is the same as exportCsv uses.
+     * The function will check the permission to write to external storage using
+     * checkPermissions function with WRITE_EXTERNAL_STORAGE permission.
+     *
+     * @return true if the cvs file was written successfully, false otherwise
+     * @see #checkPermission(String)
+     * @see InventoryApplication#exportChanges()
+     */
+    public boolean exportChanges() {
+        if(checkPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE)) {
+            return getApplication().exportChanges();
+        }
+        return false;
+    }
+
+    /**
+     * Tries to apply the changes exported by exportChanges on another device
+     * from Downloads directory. The changed items are merged into the current
+     * data, all other items are left untouched.
+     * The function will check the permission to read from external storage using
+     * checkPermissions function with READ_EXTERNAL_STORAGE permission.
+     *
+     * @return true if the cvs file was applied successfully, false otherwise
+     * @see #checkPermission(String)
+     * @see CsvExImporter#importChangesFromDownloads()
+     */
+    public boolean importChanges() {
+        if(checkPermission(Manifest.permission.READ_EXTERNAL_STORAGE)) {
+            return CsvExImporter.importChangesFromDownloads();
+        }
+        return false;
+    }
+
     /**
      * Tries to export a csv file to Downloads directory.
      * This is used to share data on a basic level or get an initial setup, which was created
@@ -146,11 +232,29 @@ public class InventoryApp {
      *
      * @return true if the cvs file was written successfully, false otherwise
      * @see #checkPermission(String)
-     * @see CsvExImporter#exportCsvToDownloads()
+     * @see CsvExImporter#exportCsvToDownloads(boolean)
      * */
     public boolean exportCsv() {
         if(checkPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE)) {
-            return CsvExImporter.exportCsvToDownloads();
+            return CsvExImporter.exportCsvToDownloads(false);
+        }
+        return false;
+    }
+
+    /**
+     * Like exportCsv, but writes the file gzip compressed as export.csv.gz,
+     * which is a fraction of the size and faster to copy or share.
+     * Importing detects compressed files on its own.
+     * The function will check the permission to write to external storage using
+     * checkPermissions function with WRITE_EXTERNAL_STORAGE permission.
+     *
+     * @return true if the compressed file was written successfully, false otherwise
+     * @see #exportCsv()
+     * @see CsvExImporter#exportCsvToDownloads(boolean)
+     */
+    public boolean exportCompressedCsv() {
+        if(checkPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE)) {
+            return CsvExImporter.exportCsvToDownloads(true);
         }
         return false;
     }
@@ -169,6 +273,7 @@ public class InventoryApp {
 
     public void setActiveList(int listId) {
         m_appState.currentSelectedList = listId;
+        PersistenceScheduler.getInstance().requestSave();
     }
 
     public int getActiveList() {
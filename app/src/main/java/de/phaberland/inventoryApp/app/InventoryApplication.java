@@ -0,0 +1,346 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.phaberland.inventoryApp.data.DataSnapshot;
+import de.phaberland.inventoryApp.data.ItemList;
+import de.phaberland.inventoryApp.data.ItemProvider;
+import de.phaberland.inventoryApp.data.ListProvider;
+import de.phaberland.inventoryApp.interfaces.LoadCallback;
+import de.phaberland.inventoryApp.interfaces.StorageCallback;
+
+/**
+ * InventoryApplication owns the application data for the whole process.
+ * The items and lists are loaded once, when the process is started,
+ * and stay in memory while activities are stopped, restarted or
+ * recreated, like after rotating the screen. So returning to the
+ * app does not read any file.
+ *
+ * All changes are recorded in the journal and saved in the background
+ * by the PersistenceScheduler, as long as the process lives.
+ * Once the journal got too big, the data is written to the
+ * StorageBackend chosen in the application state.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ * @see InventoryApp
+ * @see StorageBackend
+ */
+public class InventoryApplication extends Application {
+    // number of items indexed at once after loading
+    private static final int INDEX_STEP = 256;
+
+    private Handler m_mainHandler;
+    private MutationJournal m_journal;
+    // background thread only
+    private StorageBackend m_backend;
+    // true if the backend holds no intact data yet, like after an update
+    private volatile boolean m_snapshotMissing;
+    // modification count of the data, when it was saved last
+    private volatile long m_savedModificationCount;
+
+    // main thread only
+    private boolean m_loaded = false;
+    private final List<LoadCallback> m_waiting = new ArrayList<>();
+
+    private final Runnable m_saveTask = new Runnable() {
+        @Override
+        public void run() {
+            save();
+        }
+    };
+
+    /**
+     * Starts loading the data in the background,
+     * as soon as the process is created.
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        m_mainHandler = new Handler(Looper.getMainLooper());
+        PersistenceScheduler.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+                m_mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        loaded();
+                    }
+                });
+                indexItems();
+            }
+        });
+    }
+
+    /**
+     * Calls the callback once the items and lists can be used.
+     * If they are already loaded, it is called right away.
+     * Must be called on the main thread.
+     * @param callback the callback to inform
+     */
+    void whenLoaded(LoadCallback callback) {
+        if(m_loaded) {
+            callback.listsLoaded();
+        } else {
+            m_waiting.add(callback);
+        }
+    }
+
+    /**
+     * Removes a callback passed to whenLoaded, which is not called afterwards.
+     * Must be called on the main thread.
+     * @param callback the callback not to inform anymore
+     */
+    void stopWaiting(LoadCallback callback) {
+        m_waiting.remove(callback);
+    }
+
+    /**
+     * Has everything not saved yet written in the background right away,
+     * like when the app is stopped. The data stays in memory.
+     * If nothing changed, nothing is written.
+     */
+    void saveSoon() {
+        PersistenceScheduler.getInstance().saveSoon();
+    }
+
+    /**
+     * Has the data stored by another backend from now on. The data is written
+     * to the new backend right away, it is used once that succeeded and the
+     * application state naming it was saved. The journal is kept, replaying
+     * it on top of the newer data of the new backend leads to the same data.
+     * The switch is done on the background thread of the PersistenceScheduler,
+     * the callback is informed about the result on the main thread.
+     * @param name name of the backend
+     * @param callback the callback to inform, once the switch is done
+     * @see StorageBackend
+     */
+    void setStorageBackend(final String name, final StorageCallback callback) {
+        PersistenceScheduler.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean success = switchBackend(name);
+                m_mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.storageChanged(success);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Exports the items changed since the last export to the download folder.
+     * With the SQLite backend the changes are written to the database first
+     * and the changed rows are queried from it, otherwise they are taken
+     * from the items in memory. Everything not saved yet is saved first.
+     * Runs on the background thread of the PersistenceScheduler and blocks
+     * until done. Must be called on the main thread.
+     * @return true when successful, false otherwise
+     * @see CsvExImporter#exportChangesToDownloads(DataSnapshot)
+     */
+    boolean exportChanges() {
+        final long sinceVersion = InventoryApp.getAppState().exportedVersion;
+        DataSnapshot changes = PersistenceScheduler.getInstance().call(new Callable<DataSnapshot>() {
+            @Override
+            public DataSnapshot call() {
+                save();
+                if(m_backend instanceof SqliteBackend && compact()) {
+                    DataSnapshot written = ((SqliteBackend) m_backend).readChangesSince(sinceVersion);
+                    if(written != null) {
+                        return written;
+                    }
+                }
+                return ItemProvider.getInstance().getChangesSince(sinceVersion);
+            }
+        });
+        return changes != null && CsvExImporter.exportChangesToDownloads(changes);
+    }
+
+    //////////////
+    // internal //
+    //////////////
+
+    /**
+     * Writes the data to the backend of the given name and uses it from now on,
+     * once the application state naming it was saved.
+     * Runs on the background thread of the PersistenceScheduler.
+     * @param name name of the backend
+     * @return true if the backend is used, false if the previous one is still used
+     */
+    private boolean switchBackend(String name) {
+        if(name.equals(m_backend.getName())) {
+            return true;
+        }
+        StorageBackend backend = createBackend(name);
+        if(!backend.write(ItemProvider.getInstance().getSnapshot())) {
+            backend.close();
+            return false;
+        }
+        InventoryApp.AppState state = InventoryApp.getAppState();
+        String previous = state.storageBackend;
+        state.storageBackend = name;
+        if(!CsvExImporter.exportAppState(this)) {
+            // the old backend is read on the next start, so keep writing to it
+            state.storageBackend = previous;
+            backend.close();
+            return false;
+        }
+        m_backend.close();
+        m_backend = backend;
+        m_snapshotMissing = false;
+        return true;
+    }
+
+    /**
+     * Creates the backend of the given name,
+     * the binary snapshot for unknown names.
+     * @param name name of the backend
+     * @return a new backend
+     */
+    private StorageBackend createBackend(String name) {
+        if(StorageBackend.CSV.equals(name)) {
+            return new CsvBackend(this);
+        } else if(StorageBackend.SQLITE.equals(name)) {
+            return new SqliteBackend(this);
+        }
+        return new SnapshotFile(getFilesDir());
+    }
+
+    /**
+     * Initializes the Providers and reads the items and lists
+     * from the backend chosen in the application state, or the data written
+     * before if the last one is damaged, or from the csv file written by
+     * older versions, if the backend holds no data yet.
+     * Afterwards the changes since then are replayed from the journal.
+     * From then on all changes are recorded in the journal.
+     * Building the indices of the items is deferred.
+     * Runs on the background thread of the PersistenceScheduler.
+     * @see ListProvider
+     * @see ItemProvider
+     * @see MutationJournal
+     */
+    private void load() {
+        // init providers
+        ItemProvider.getInstance().init();
+        ItemProvider.getInstance().deferIndexing();
+        ListProvider.getInstance().init();
+
+        // read from app directory
+        if(!CsvExImporter.importAppState(this)) {
+            InventoryApp.AppState state = new InventoryApp.AppState();
+            state.currentSelectedList = ItemList.INVENTORY_LIST_ID;
+            InventoryApp.setAppState(state);
+        }
+        // the count starts over with every process, changes made from now on
+        // need versions above the one exported last, to be in the next export
+        ItemProvider.getInstance().restoreModificationCount(InventoryApp.getAppState().exportedVersion);
+        m_backend = createBackend(InventoryApp.getAppState().storageBackend);
+        int generation = m_backend.read();
+        // write to the backend soon, unless its data is intact
+        m_snapshotMissing = generation != StorageBackend.CURRENT;
+        if(generation == StorageBackend.NONE && !(m_backend instanceof CsvBackend)) {
+            // the csv backend already tried to read that file
+            CsvExImporter.importCsvFromCache(this);
+        }
+        m_journal = new MutationJournal(getFilesDir(), PersistenceScheduler.getInstance());
+        // the changes since the previous snapshot are in the backup journal
+        m_journal.replay(generation != StorageBackend.CURRENT);
+        // make sure ids of items created earlier are not handed out again
+        ItemProvider.getInstance().reserveIdsBelow(InventoryApp.getAppState().nextItemId);
+        m_journal.attach();
+        m_savedModificationCount = ItemProvider.getInstance().getModificationCount();
+        PersistenceScheduler.getInstance().setTask(m_saveTask);
+    }
+
+    /**
+     * Informs the callbacks waiting for the data on the main thread.
+     */
+    private void loaded() {
+        m_loaded = true;
+        for(LoadCallback callback : m_waiting) {
+            callback.listsLoaded();
+        }
+        m_waiting.clear();
+    }
+
+    /**
+     * Builds the indices of the loaded items step by step.
+     * Every step is queued on its own, so saves and changes
+     * on the main thread are not held up until all are done.
+     */
+    private void indexItems() {
+        if(ItemProvider.getInstance().indexDeferredItems(INDEX_STEP)) {
+            return;
+        }
+        PersistenceScheduler.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                indexItems();
+            }
+        });
+    }
+
+    /**
+     * Saves the application state and the changes of ItemProvider and ListProvider,
+     * which are already collected in the journal and only need to be written out.
+     * Once the journal got too big, or there is no binary snapshot yet,
+     * a new snapshot is written.
+     * If nothing changed since the data was loaded or saved last,
+     * nothing is written at all.
+     * Runs on the background thread of the PersistenceScheduler.
+     */
+    private void save() {
+        CsvExImporter.exportAppState(this);
+        long modificationCount = ItemProvider.getInstance().getModificationCount();
+        if(modificationCount == m_savedModificationCount && !m_snapshotMissing) {
+            return;
+        }
+        m_journal.flush();
+        // without a snapshot the data was read from the csv file of an older version
+        if(m_snapshotMissing || m_journal.needsCompaction()) {
+            compact();
+        }
+        m_savedModificationCount = modificationCount;
+    }
+
+    /**
+     * Writes a new snapshot of the items and lists.
+     * The journal is moved aside first and the snapshot taken afterwards,
+     * so later changes go to a new journal. The old journal is
+     * kept as backup journal, once the snapshot was written.
+     * @return true if the backend holds the data of the snapshot
+     */
+    private boolean compact() {
+        File oldJournal = m_journal.rotate();
+        if(oldJournal == null) {
+            return false;
+        }
+        DataSnapshot snapshot = ItemProvider.getInstance().getSnapshot();
+        if(m_backend.write(snapshot)) {
+            m_snapshotMissing = false;
+            // leads from the previous snapshot to the new one, in case the new one gets damaged
+            if(!oldJournal.renameTo(new File(getFilesDir(), MutationJournal.BACKUPJOURNALFILE))
+                    && !oldJournal.delete()) {
+                oldJournal.deleteOnExit();
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,527 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import de.phaberland.inventoryApp.data.IntIntMap;
+import de.phaberland.inventoryApp.data.Item;
+import de.phaberland.inventoryApp.data.ItemList;
+import de.phaberland.inventoryApp.data.ItemProvider;
+import de.phaberland.inventoryApp.data.ListProvider;
+import de.phaberland.inventoryApp.interfaces.ItemListListener;
+import de.phaberland.inventoryApp.interfaces.ItemProviderListener;
+
+/**
+ * MutationJournal is an append only log of all changes
+ * to items and lists, which were done after the last
+ * snapshot of the data was written.
+ * Instead of writing all items on every stop of the app,
+ * only the changes are appended, so saving takes time
+ * depending on the number of changes, not the number of items.
+ *
+ * Every record is written as
+ *  length(int), type(byte), values, crc32 of type and values(int)
+ * A record contains the state after the change, not the change itself,
+ * so replaying a record twice leads to the same result.
+ * On startup the journal is replayed on top of the snapshot. Replaying
+ * stops at the first incomplete or damaged record, which is cut off,
+ * as it is most likely the result of the app being killed while writing.
+ *
+ * Records are collected in memory, while the data is changed, and a save is
+ * requested from the PersistenceScheduler, which writes them to the file
+ * on its background thread. So changing data never waits for the file system.
+ *
+ * Once the journal is bigger than COMPACT_SIZE it is moved aside and a
+ * new snapshot is written in the background, afterwards the old journal
+ * is kept as backup journal. Until then the old journal is replayed before
+ * the current one. If the current snapshot is damaged, the previous one is
+ * read and the backup journal is replayed first.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+class MutationJournal {
+    static final String JOURNALFILE = "journal.bin";
+    static final String OLDJOURNALFILE = "journal.old";
+    // the journal of the last compaction, leads from the previous snapshot to the current one
+    static final String BACKUPJOURNALFILE = "journal.bak";
+    // size of the journal, which triggers writing a new snapshot
+    static final long COMPACT_SIZE = 64 * 1024;
+    // records are small, anything bigger is a damaged length
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    // record types
+    private static final byte ITEM_PUT = 1;
+    private static final byte AMOUNT_SET = 2;
+    private static final byte LIST_CLEAR = 3;
+    private static final byte ITEMS_CLEAR = 4;
+
+    private final File m_file;
+    private final PersistenceScheduler m_scheduler;
+    // records not written to the file yet, guarded by this
+    private final ByteArrayOutputStream m_pending;
+    private final DataOutputStream m_pendingOut;
+    private long m_size;
+    // used while holding the write lock of the data only
+    private final ByteArrayOutputStream m_record;
+    private final DataOutputStream m_recordOut;
+    private final CRC32 m_crc;
+
+    private final ItemListListener m_listListener = new ItemListListener() {
+        @Override
+        public void itemAdded(int listId, int itemId, int amount) {
+            appendAmount(listId, itemId, amount);
+        }
+
+        @Override
+        public void itemRemoved(int listId, int itemId, int oldAmount) {
+            appendAmount(listId, itemId, -1);
+        }
+
+        @Override
+        public void amountChanged(int listId, int itemId, int oldAmount, int newAmount) {
+            appendAmount(listId, itemId, newAmount);
+        }
+
+        @Override
+        public void listCleared(int listId) {
+            try {
+                beginRecord(LIST_CLEAR);
+                m_recordOut.writeInt(listId);
+                endRecord();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    };
+
+    private final ItemProviderListener m_itemListener = new ItemProviderListener() {
+        @Override
+        public void itemAdded(int itemId) {
+            appendItem(itemId);
+        }
+
+        @Override
+        public void itemRenamed(int itemId, String oldName, String newName) {
+            appendItem(itemId);
+        }
+
+        @Override
+        public void unitChanged(int itemId, Item.UNIT oldUnit, Item.UNIT newUnit) {
+            appendItem(itemId);
+        }
+
+        @Override
+        public void valuesChanged(int itemId) {
+            appendItem(itemId);
+        }
+
+        @Override
+        public void itemsCleared() {
+            try {
+                beginRecord(ITEMS_CLEAR);
+                endRecord();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public void itemsReloaded() {
+            appendAll();
+        }
+    };
+
+    /**
+     * Constructs the journal for the given directory.
+     * Nothing is read or written, until replay or attach is called.
+     * @param dir the directory containing the journal files
+     * @param scheduler the scheduler to request writing the records from
+     */
+    MutationJournal(File dir, PersistenceScheduler scheduler) {
+        m_file = new File(dir, JOURNALFILE);
+        m_scheduler = scheduler;
+        m_pending = new ByteArrayOutputStream(1024);
+        m_pendingOut = new DataOutputStream(m_pending);
+        m_record = new ByteArrayOutputStream(64);
+        m_recordOut = new DataOutputStream(m_record);
+        m_crc = new CRC32();
+    }
+
+    //////////////////////
+    // replay/recording //
+    //////////////////////
+
+    /**
+     * Applies the records of the old journal, if a compaction
+     * did not finish, and the current journal to the data.
+     * Should be called after the snapshot was read and before
+     * attach, so the replayed changes are not recorded again.
+     * @param includeBackup true to apply the backup journal first,
+     *  if the previous snapshot was read instead of the current one
+     */
+    void replay(boolean includeBackup) {
+        File backupFile = new File(m_file.getParentFile(), BACKUPJOURNALFILE);
+        if(includeBackup && backupFile.exists()) {
+            replay(backupFile);
+        }
+        File oldFile = new File(m_file.getParentFile(), OLDJOURNALFILE);
+        if(oldFile.exists()) {
+            replay(oldFile);
+        }
+        if(m_file.exists()) {
+            replay(m_file);
+        }
+    }
+
+    /**
+     * Starts recording all changes of the items and lists.
+     */
+    void attach() {
+        synchronized(this) {
+            m_size = m_file.length() + m_pending.size();
+        }
+        ItemProvider.getInstance().addListener(m_itemListener);
+        ListProvider.getInstance().addListListener(m_listListener);
+    }
+
+    /**
+     * Stops recording. Records not written yet are kept,
+     * until flush is called.
+     */
+    void detach() {
+        ItemProvider.getInstance().removeListener(m_itemListener);
+        ListProvider.getInstance().removeListListener(m_listListener);
+    }
+
+    /**
+     * Writes the records collected so far to the file
+     * and syncs it to the storage.
+     * Should be called from the background thread of the PersistenceScheduler.
+     */
+    synchronized void flush() {
+        if(m_pending.size() == 0) {
+            return;
+        }
+        try {
+            FileOutputStream out = new FileOutputStream(m_file, true);
+            try {
+                m_pending.writeTo(out);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            m_pending.reset();
+        } catch (IOException e) {
+            // keep the records, they are written with the next flush
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return true if the journal got big enough to be compacted
+     */
+    synchronized boolean needsCompaction() {
+        return m_size > COMPACT_SIZE;
+    }
+
+    /**
+     * Writes the collected records and moves the current journal aside,
+     * so a new snapshot can be written, and continues with an empty journal.
+     * The snapshot to write must be taken after the journal was moved,
+     * so it contains every change recorded in the moved journal. Changes
+     * recorded in both, the snapshot and the new journal, do not matter,
+     * as replaying a record on data already containing it changes nothing.
+     * If the last compaction did not finish, like when the app was killed
+     * while writing the snapshot, the current journal is appended to the
+     * old one, so the new snapshot covers both.
+     * @return the moved journal, which has to be kept as backup journal
+     *  once the snapshot was written, or null if nothing was moved
+     */
+    synchronized File rotate() {
+        File oldFile = new File(m_file.getParentFile(), OLDJOURNALFILE);
+        flush();
+        if(m_pending.size() != 0) {
+            return null;
+        }
+        if(oldFile.exists()) {
+            if(!appendTo(oldFile)) {
+                return null;
+            }
+            m_size = 0;
+            return oldFile;
+        }
+        try {
+            // nothing recorded yet, the snapshot is still to be written
+            if(!m_file.exists() && !m_file.createNewFile()) {
+                return null;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if(!m_file.renameTo(oldFile)) {
+            return null;
+        }
+        m_size = 0;
+        return oldFile;
+    }
+
+    //////////////
+    // internal //
+    //////////////
+
+    /**
+     * Moves all records of the current journal to the end of the given file.
+     * @param file the file to append to
+     * @return true if the current journal is empty now, false otherwise
+     */
+    private boolean appendTo(File file) {
+        if(!m_file.exists()) {
+            return true;
+        }
+        try {
+            FileInputStream in = new FileInputStream(m_file);
+            try {
+                FileOutputStream out = new FileOutputStream(file, true);
+                try {
+                    byte[] buffer = new byte[8192];
+                    int length;
+                    while((length = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, length);
+                    }
+                    out.getFD().sync();
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return m_file.delete();
+    }
+
+    private void appendItem(int itemId) {
+        Item item = ItemProvider.getInstance().getItemById(itemId);
+        if(item == null) {
+            return;
+        }
+        try {
+            beginItemRecord(item);
+            endRecord();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void appendAmount(int listId, int itemId, int amount) {
+        // temporary lists are not persisted
+        if(listId < 0) {
+            return;
+        }
+        try {
+            beginAmountRecord(listId, itemId, amount);
+            endRecord();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Records all items and the amounts of the inventory and shopping list,
+     * after they were loaded at once without reporting every single change.
+     * Called while the write lock is held, so nothing changes in between.
+     */
+    private void appendAll() {
+        try {
+            for(Item item : ItemProvider.getInstance().getAllItems().values()) {
+                beginItemRecord(item);
+                writeRecord();
+            }
+            for(int listId : new int[] {ItemList.INVENTORY_LIST_ID, ItemList.SHOPPING_LIST_ID}) {
+                IntIntMap.Cursor cursor = ListProvider.getInstance().getListById(listId).getContentCursor();
+                while(cursor.moveToNext()) {
+                    beginAmountRecord(listId, cursor.getKey(), cursor.getValue());
+                    writeRecord();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        m_scheduler.requestSave();
+    }
+
+    private void beginItemRecord(Item item) throws IOException {
+        beginRecord(ITEM_PUT);
+        m_recordOut.writeInt(item.getM_id());
+        m_recordOut.writeUTF(item.getM_name());
+        m_recordOut.writeByte(item.getM_unit().ordinal());
+        m_recordOut.writeInt(item.getM_critValue());
+        m_recordOut.writeInt(item.getM_defValue());
+    }
+
+    private void beginAmountRecord(int listId, int itemId, int amount) throws IOException {
+        beginRecord(AMOUNT_SET);
+        m_recordOut.writeInt(listId);
+        m_recordOut.writeInt(itemId);
+        m_recordOut.writeInt(amount);
+    }
+
+    private void beginRecord(byte type) throws IOException {
+        m_record.reset();
+        m_recordOut.writeByte(type);
+    }
+
+    private void endRecord() throws IOException {
+        writeRecord();
+        m_scheduler.requestSave();
+    }
+
+    /**
+     * Adds the current record to the pending records, without requesting a save.
+     */
+    private void writeRecord() throws IOException {
+        m_recordOut.flush();
+        m_crc.reset();
+        m_crc.update(m_record.toByteArray(), 0, m_record.size());
+        synchronized(this) {
+            m_pendingOut.writeInt(m_record.size());
+            m_record.writeTo(m_pendingOut);
+            m_pendingOut.writeInt((int) m_crc.getValue());
+            m_size += 8 + m_record.size();
+        }
+    }
+
+    /**
+     * Applies all intact records of a journal file and cuts
+     * off the file after the last intact record.
+     * @param file the journal file to replay
+     */
+    private void replay(File file) {
+        long validLength = 0;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                byte[] buffer = new byte[256];
+                CRC32 crc = new CRC32();
+                while(true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if(length <= 0 || length > MAX_RECORD_LENGTH) {
+                        break;
+                    }
+                    if(buffer.length < length) {
+                        buffer = new byte[length];
+                    }
+                    in.readFully(buffer, 0, length);
+                    int checksum = in.readInt();
+                    crc.reset();
+                    crc.update(buffer, 0, length);
+                    if((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    apply(new DataInputStream(new ByteArrayInputStream(buffer, 0, length)));
+                    validLength += 8 + length;
+                }
+            } catch (EOFException e) {
+                // incomplete record at the end, the app was killed while writing
+            } finally {
+                in.close();
+            }
+            if(validLength < file.length()) {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(validLength);
+                } finally {
+                    raf.close();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Applies a single record to the data.
+     * @param record the values of the record, starting with the type
+     * @throws IOException if the record is damaged
+     */
+    private static void apply(DataInputStream record) throws IOException {
+        switch(record.readByte()) {
+            case ITEM_PUT: {
+                int id = record.readInt();
+                String name = record.readUTF();
+                int unitOrdinal = record.readByte();
+                int crit = record.readInt();
+                int def = record.readInt();
+                if(unitOrdinal < 0 || unitOrdinal >= Item.UNIT.values().length) {
+                    return;
+                }
+                Item.UNIT unit = Item.UNIT.values()[unitOrdinal];
+                Item item = ItemProvider.getInstance().getItemById(id);
+                if(item == null) {
+                    id = ItemProvider.getInstance().restoreItem(id, name, unit);
+                    item = ItemProvider.getInstance().getItemById(id);
+                } else {
+                    if(!name.equals(item.getM_name())) {
+                        item.setM_name(name);
+                    }
+                    if(unit != item.getM_unit()) {
+                        item.setM_unit(unit);
+                    }
+                }
+                item.setM_critValue(crit);
+                item.setM_defValue(def);
+                break;
+            }
+            case AMOUNT_SET: {
+                ItemList list = ListProvider.getInstance().getListById(record.readInt());
+                Item item = ItemProvider.getInstance().getItemById(record.readInt());
+                int amount = record.readInt();
+                if(list == null || item == null) {
+                    return;
+                }
+                int current = list.getAmountForId(item.getM_id());
+                if(amount < 0) {
+                    list.remove(item.getM_id());
+                } else if(current < 0) {
+                    list.add(item, amount);
+                } else if(current != amount) {
+                    list.add(item, amount - current);
+                }
+                break;
+            }
+            case LIST_CLEAR:
+                ListProvider.getInstance().clearList(record.readInt());
+                break;
+            case ITEMS_CLEAR:
+                ItemProvider.getInstance().clear();
+                break;
+            default:
+                break;
+        }
+    }
+}
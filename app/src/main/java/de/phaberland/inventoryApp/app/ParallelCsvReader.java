@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import android.os.Build;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import de.phaberland.inventoryApp.data.BulkLoad;
+import de.phaberland.inventoryApp.data.ItemProvider;
+
+/**
+ * ParallelCsvReader reads big csv files of items on all cores.
+ *
+ * The file is read into memory and split into chunks at line breaks,
+ * which are not within a quoted field. The chunks are parsed into a
+ * BulkLoad each on a ForkJoinPool. Afterwards the loads are joined in
+ * the order of the chunks, so the items are in the order of the file
+ * and get the same ids as when reading the file on a single thread.
+ *
+ * The chunks are split on the utf-8 encoded bytes, line breaks are
+ * single bytes in utf-8, so a chunk never starts within a character.
+ *
+ * ForkJoinPool is available from Android 5.0, older devices and
+ * small files are read by CsvExImporter on a single thread.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ * @see CsvExImporter#readRows(CsvReader, BulkLoad)
+ */
+class ParallelCsvReader {
+    // smaller files are read faster on a single thread
+    private static final long MIN_FILE_SIZE = 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    // more chunks than threads, so threads finishing early take over the rest
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final String CHARSET = "UTF-8";
+
+    private final byte[] m_data;
+    private final int m_length;
+    // start of every chunk within m_data, followed by m_length
+    private int[] m_chunkStarts;
+    // line number of the first line of every chunk
+    private int[] m_chunkLines;
+    private int m_chunkCount;
+
+    /**
+     * Tells if a file is worth to be read in parallel.
+     * @param file the file to read
+     * @return true if the file is big enough and the device
+     *  has more than one core and supports ForkJoinPool
+     */
+    static boolean isWorthIt(File file) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && Runtime.getRuntime().availableProcessors() > 1
+                && file.length() >= MIN_FILE_SIZE
+                && file.length() <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Reads all rows of the file into a BulkLoad, which is not committed.
+     * No data is changed.
+     * @param file the file to read
+     * @return a load containing the items in the order of the file
+     * @throws IOException if reading the file failed
+     */
+    static BulkLoad read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        byte[] data;
+        int length = 0;
+        try {
+            data = new byte[(int) file.length()];
+            int count;
+            while(length < data.length && (count = in.read(data, length, data.length - length)) > 0) {
+                length += count;
+            }
+        } finally {
+            in.close();
+        }
+        return new ParallelCsvReader(data, length).read();
+    }
+
+    private ParallelCsvReader(byte[] data, int length) {
+        m_data = data;
+        m_length = length;
+    }
+
+    private BulkLoad read() throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, m_length / (threads * CHUNKS_PER_THREAD) + 1);
+        split(chunkSize);
+
+        List<Callable<BulkLoad>> tasks = new ArrayList<>(m_chunkCount);
+        for(int i = 0; i < m_chunkCount; i++) {
+            final int chunk = i;
+            tasks.add(new Callable<BulkLoad>() {
+                @Override
+                public BulkLoad call() throws IOException {
+                    return readChunk(chunk);
+                }
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<BulkLoad>> results = pool.invokeAll(tasks);
+            BulkLoad load = ItemProvider.getInstance().beginBulkLoad(m_length / 32);
+            for(Future<BulkLoad> result : results) {
+                load.addAll(result.get());
+            }
+            return load;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while reading");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Parses the rows of a single chunk.
+     * @param chunk index of the chunk
+     * @return a load with the items of the chunk
+     * @throws IOException if the chunk could not be decoded
+     */
+    private BulkLoad readChunk(int chunk) throws IOException {
+        int start = m_chunkStarts[chunk];
+        int length = m_chunkStarts[chunk + 1] - start;
+        CsvReader csv = new CsvReader(new InputStreamReader(
+                new ByteArrayInputStream(m_data, start, length), CHARSET), m_chunkLines[chunk]);
+        BulkLoad load = ItemProvider.getInstance().beginBulkLoad(length / 32);
+        CsvExImporter.readRows(csv, load);
+        return load;
+    }
+
+    /**
+     * Splits the data into chunks of about the given size.
+     * A chunk ends after a line feed outside of quoted fields.
+     * Quotes are tracked the same way the CsvReader does, a quote only
+     * starts a quoted field at the beginning of a field.
+     * Line breaks are counted like in the CsvReader, CR LF counts as one.
+     * @param chunkSize the size of a chunk to aim for
+     */
+    private void split(int chunkSize) {
+        int maxChunks = m_length / chunkSize + 2;
+        m_chunkStarts = new int[maxChunks + 1];
+        m_chunkLines = new int[maxChunks];
+        m_chunkStarts[0] = 0;
+        m_chunkLines[0] = 1;
+        m_chunkCount = 1;
+
+        int line = 1;
+        boolean quoted = false;
+        boolean fieldBegin = true;
+        int nextSplit = chunkSize;
+        for(int i = 0; i < m_length; i++) {
+            byte b = m_data[i];
+            if(quoted) {
+                if(b == '"') {
+                    if(i + 1 < m_length && m_data[i + 1] == '"') {
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if(b == '\n' || (b == '\r' && (i + 1 == m_length || m_data[i + 1] != '\n'))) {
+                    line++;
+                }
+                continue;
+            }
+            if(b == ',') {
+                fieldBegin = true;
+                continue;
+            }
+            if(b == '"' && fieldBegin) {
+                quoted = true;
+                fieldBegin = false;
+            } else if(b == '\n' || (b == '\r' && (i + 1 == m_length || m_data[i + 1] != '\n'))) {
+                line++;
+                fieldBegin = true;
+                if(b == '\n' && i + 1 >= nextSplit && i + 1 < m_length) {
+                    m_chunkStarts[m_chunkCount] = i + 1;
+                    m_chunkLines[m_chunkCount] = line;
+                    m_chunkCount++;
+                    nextSplit = i + 1 + chunkSize;
+                }
+                continue;
+            }
+            fieldBegin = false;
+        }
+        m_chunkStarts[m_chunkCount] = m_length;
+    }
+}
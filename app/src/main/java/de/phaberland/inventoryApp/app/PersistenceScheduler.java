@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PersistenceScheduler runs the saving of the application data
+ * on a dedicated background thread, so the main thread never
+ * has to wait for the file system.
+ *
+ * Every change requests a save. Requests are coalesced, the save
+ * runs once no further request came in for QUIET_PERIOD_MS, but
+ * at latest MAX_DELAY_MS after the first request, so a constant
+ * stream of changes is still saved regularly.
+ * Saves are run one after another, never in parallel.
+ *
+ * The scheduler is a singleton for the whole process, so a save
+ * started by an activity, which was stopped, is still waited for
+ * by the next one.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+class PersistenceScheduler {
+    // time without requests, until the save is run
+    static final long QUIET_PERIOD_MS = 1000;
+    // longest time a request waits for the save
+    static final long MAX_DELAY_MS = 10000;
+
+    private final ScheduledExecutorService m_executor;
+    private volatile Runnable m_task;
+    // guarded by this
+    private boolean m_scheduled;
+    private long m_firstRequest;
+    private long m_lastRequest;
+
+    private final Runnable m_check = new Runnable() {
+        @Override
+        public void run() {
+            if(isDue()) {
+                runTask();
+            }
+        }
+    };
+
+    /**
+     * Holds the instance, the class is loaded on first access
+     * to getInstance, which the class loader does thread safe.
+     */
+    private static class InstanceHolder {
+        static final PersistenceScheduler INSTANCE = new PersistenceScheduler();
+    }
+
+    /**
+     * standard singleton style getInstance.
+     * This is thread safe without locking.
+     * @return the static instance of PersistenceScheduler
+     */
+    static PersistenceScheduler getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private PersistenceScheduler() {
+        m_executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "persistence");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sets what to do to save the data. The task is run
+     * on the background thread.
+     * @param task the task saving the data, null to save nothing
+     */
+    void setTask(Runnable task) {
+        m_task = task;
+    }
+
+    /**
+     * Requests the data to be saved. Can be called from any thread
+     * and returns right away. The save is run in the background,
+     * once there were no more requests for a short while.
+     */
+    synchronized void requestSave() {
+        long now = System.nanoTime();
+        m_lastRequest = now;
+        if(!m_scheduled) {
+            m_scheduled = true;
+            m_firstRequest = now;
+            m_executor.schedule(m_check, QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Requests the data to be saved as soon as possible,
+     * like when the app is stopped. Returns right away.
+     */
+    synchronized void saveSoon() {
+        m_scheduled = false;
+        m_executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runTask();
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the background thread, after everything queued
+     * so far, like a save requested by saveSoon. Used for work, which
+     * must not overlap with saving, like loading the data. Returns right away.
+     * @param task the task to run
+     */
+    void execute(Runnable task) {
+        m_executor.execute(task);
+    }
+
+    /**
+     * Saves the data right away and blocks until it is done,
+     * including any save already running.
+     * Used when the data has to be saved, before it leaves the app,
+     * like before exporting it. Must not be called on the background thread.
+     */
+    void flush() {
+        Future<?> done;
+        synchronized(this) {
+            m_scheduled = false;
+            done = m_executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    runTask();
+                }
+            });
+        }
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs a task on the background thread, after everything queued
+     * so far, and blocks until it is done. Used for work, which needs
+     * the data as written by the backend, like exporting from it.
+     * Must not be called on the background thread.
+     * @param task the task to run
+     * @return the result of the task, null if it failed
+     */
+    <T> T call(Callable<T> task) {
+        try {
+            return m_executor.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    //////////////
+    // internal //
+    //////////////
+
+    /**
+     * Checks if a scheduled save is due. If requests came in during
+     * the quiet period, the check is scheduled again.
+     * @return true if the save should be run now
+     */
+    private synchronized boolean isDue() {
+        if(!m_scheduled) {
+            // already saved by saveSoon or flush
+            return false;
+        }
+        long now = System.nanoTime();
+        long quiet = TimeUnit.NANOSECONDS.toMillis(now - m_lastRequest);
+        long waited = TimeUnit.NANOSECONDS.toMillis(now - m_firstRequest);
+        if(quiet < QUIET_PERIOD_MS && waited < MAX_DELAY_MS) {
+            long delay = Math.min(QUIET_PERIOD_MS - quiet, MAX_DELAY_MS - waited);
+            m_executor.schedule(m_check, delay, TimeUnit.MILLISECONDS);
+            return false;
+        }
+        m_scheduled = false;
+        return true;
+    }
+
+    private void runTask() {
+        Runnable task = m_task;
+        if(task == null) {
+            return;
+        }
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            // keep the thread alive for the next save
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * SafeFile writes a file, so it is never left incomplete,
+ * even if the app is killed or the device looses power while writing.
+ *
+ * The content is written to a temporary file next to the file, which is
+ * synced to the storage and renamed to the file afterwards, replacing it
+ * at once. Until then the file keeps its last content.
+ *
+ * Files of the app itself can carry a checksum. Then the content is
+ * preceded by a header telling the format and the CRC-32C of both is
+ * appended as footer, which is verified when reading the file. A file
+ * starting with the header is damaged, unless its footer is intact, so
+ * a file missing its last bytes is not taken for an old one.
+ * The previous content is kept as backup, which can be read, if the file
+ * is missing or damaged. Files without header, written by older versions,
+ * are read without verification.
+ *
+ * Usage:
+ *  OutputStream out = safeFile.startWrite();
+ *  ...write the content to out...
+ *  safeFile.finishWrite(out) on success, safeFile.failWrite(out) on errors
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+class SafeFile {
+    // "SAFE", marks the header of files with checksum
+    private static final int HEADER_MAGIC = 0x53414645;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // "CRCC", marks the footer
+    private static final int FOOTER_MAGIC = 0x43524343;
+    private static final int FOOTER_SIZE = 8;
+
+    private final File m_file;
+    private final File m_tmpFile;
+    private final File m_backupFile;
+    private final boolean m_checksum;
+
+    /**
+     * Output stream calculating the checksum of everything written.
+     */
+    private static class ChecksumOutputStream extends FilterOutputStream {
+        private final FileOutputStream m_fileOut;
+        private final Crc32c m_crc = new Crc32c();
+
+        ChecksumOutputStream(FileOutputStream out) {
+            super(out);
+            m_fileOut = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            m_crc.update(b);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            m_crc.update(b, off, len);
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * Constructs a SafeFile for the given file.
+     * @param file the file to write and read
+     * @param checksum true to write a checksum and keep a backup,
+     *  false for files read by others, like exported files
+     */
+    SafeFile(File file, boolean checksum) {
+        m_file = file;
+        m_tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        m_backupFile = new File(file.getParentFile(), file.getName() + ".bak");
+        m_checksum = checksum;
+    }
+
+    ///////////
+    // write //
+    ///////////
+
+    /**
+     * Starts writing the file. The content goes to a temporary file,
+     * so the file itself is not changed yet. If a checksum is used,
+     * the header is written already.
+     * @return the stream to write the content to, which is not buffered
+     * @throws IOException if the temporary file can not be written
+     */
+    OutputStream startWrite() throws IOException {
+        ChecksumOutputStream stream = new ChecksumOutputStream(new FileOutputStream(m_tmpFile));
+        if(m_checksum) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            header.putInt(HEADER_MAGIC);
+            header.putInt(FORMAT_VERSION);
+            try {
+                stream.write(header.array());
+            } catch (IOException e) {
+                failWrite(stream);
+                throw e;
+            }
+        }
+        return stream;
+    }
+
+    /**
+     * Finishes writing. The checksum is appended, the content synced to the
+     * storage and the temporary file renamed to the file, which replaces it
+     * at once. If a checksum is used, the previous content is kept as backup.
+     * The stream is closed, also if finishing failed.
+     * @param out the stream returned by startWrite
+     * @return true if the file was written, false otherwise
+     */
+    boolean finishWrite(OutputStream out) {
+        ChecksumOutputStream stream = (ChecksumOutputStream) out;
+        try {
+            try {
+                if(m_checksum) {
+                    ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.BIG_ENDIAN);
+                    footer.putInt(FOOTER_MAGIC);
+                    footer.putInt((int) stream.m_crc.getValue());
+                    stream.m_fileOut.write(footer.array());
+                }
+                stream.m_fileOut.flush();
+                stream.m_fileOut.getFD().sync();
+            } finally {
+                stream.m_fileOut.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            m_tmpFile.delete();
+            return false;
+        }
+        if(m_checksum && m_file.exists() && !backup()) {
+            m_tmpFile.delete();
+            return false;
+        }
+        // replaces the file at once, there is no moment without it
+        return m_tmpFile.renameTo(m_file);
+    }
+
+    /**
+     * Keeps the current content of the file as backup, while the file
+     * stays in place. The file is linked as backup where possible,
+     * copied otherwise.
+     * @return true if the backup was made, false otherwise
+     */
+    private boolean backup() {
+        m_backupFile.delete();
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            try {
+                Os.link(m_file.getPath(), m_backupFile.getPath());
+                return true;
+            } catch (ErrnoException e) {
+                // the file system might not support links, copy instead
+                e.printStackTrace();
+            }
+        }
+        try {
+            FileInputStream in = new FileInputStream(m_file);
+            try {
+                FileOutputStream out = new FileOutputStream(m_backupFile);
+                try {
+                    FileChannel source = in.getChannel();
+                    long size = source.size();
+                    long copied = 0;
+                    while(copied < size) {
+                        copied += source.transferTo(copied, size - copied, out.getChannel());
+                    }
+                    out.getFD().sync();
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            m_backupFile.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Cancels writing, the file keeps its last content.
+     * @param out the stream returned by startWrite, may be null
+     */
+    void failWrite(OutputStream out) {
+        if(out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        m_tmpFile.delete();
+    }
+
+    //////////
+    // read //
+    //////////
+
+    /**
+     * Reads the file, or its backup if the file is missing or damaged.
+     * @return the verified content, null if neither could be read
+     */
+    ByteBuffer read() {
+        ByteBuffer content = readCurrent();
+        if(content == null) {
+            content = readPrevious();
+        }
+        return content;
+    }
+
+    /**
+     * Maps the file into memory and verifies its checksum.
+     * @return the content without header and footer, null if the file is missing or damaged
+     */
+    ByteBuffer readCurrent() {
+        return read(m_file);
+    }
+
+    /**
+     * Maps the backup of the file into memory and verifies its checksum.
+     * The backup is the content the file had before it was written last.
+     * @return the content without header and footer, null if there is no intact backup
+     */
+    ByteBuffer readPrevious() {
+        return m_checksum ? read(m_backupFile) : null;
+    }
+
+    private ByteBuffer read(File file) {
+        if(!file.exists()) {
+            return null;
+        }
+        try {
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                FileChannel channel = fis.getChannel();
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                return m_checksum ? verify(buffer) : buffer;
+            } finally {
+                fis.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Checks the header and footer of the content.
+     * @param buffer the whole file
+     * @return the content without header and footer, null if the file is
+     *  damaged or of an unknown format
+     */
+    private static ByteBuffer verify(ByteBuffer buffer) {
+        int size = buffer.remaining();
+        if(size < HEADER_SIZE || buffer.getInt(0) != HEADER_MAGIC) {
+            // written before checksums were added
+            return buffer;
+        }
+        if(buffer.getInt(4) != FORMAT_VERSION || size < HEADER_SIZE + FOOTER_SIZE
+                || buffer.getInt(size - FOOTER_SIZE) != FOOTER_MAGIC) {
+            // written by a newer version, or the end of the file is missing
+            return null;
+        }
+        int expected = buffer.getInt(size - FOOTER_SIZE + 4);
+        buffer.limit(size - FOOTER_SIZE);
+        Crc32c crc = new Crc32c();
+        crc.update(buffer);
+        if((int) crc.getValue() != expected) {
+            return null;
+        }
+        buffer.position(HEADER_SIZE);
+        return buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+}
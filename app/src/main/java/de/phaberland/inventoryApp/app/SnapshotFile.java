@@ -0,0 +1,219 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import de.phaberland.inventoryApp.data.BulkLoad;
+import de.phaberland.inventoryApp.data.DataSnapshot;
+import de.phaberland.inventoryApp.data.Item;
+import de.phaberland.inventoryApp.data.ItemProvider;
+import de.phaberland.inventoryApp.data.ListProvider;
+
+/**
+ * SnapshotFile is the binary format the items and lists are
+ * cached in within the application files folder.
+ *
+ * The file is made of
+ *  - a header: magic(int), version(int), itemCount(int), nextItemId(int), nameTableLength(int),
+ *    modificationCount(long)
+ *  - a fixed size record per item: id, crit, def, inventoryAmount,
+ *    shopAmount, nameOffset, nameLength (all int), unit(byte), 3 bytes padding,
+ *    changeVersion(long)
+ *  - the name table, containing the utf-8 encoded names of all items
+ * All values are big endian. Amounts of -1 mean the item is not in the list.
+ * The file is read through a memory mapped buffer, so no line
+ * parsing or number conversion is needed.
+ * It is written through a SafeFile, which appends a CRC-32C checksum
+ * and keeps the previous generation of the file.
+ * This is the default StorageBackend.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+class SnapshotFile implements StorageBackend {
+    static final String FILENAME = "snapshot.bin";
+
+    private static final int MAGIC = 0x494E5653; // "INVS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 5 * 4 + 8;
+    private static final int RECORD_SIZE = 8 * 4 + 8;
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final File m_file;
+
+    /**
+     * Constructs the backend for the snapshot file in the given folder.
+     * @param directory the application files folder
+     */
+    SnapshotFile(File directory) {
+        m_file = new File(directory, FILENAME);
+    }
+
+    @Override
+    public String getName() {
+        return BINARY;
+    }
+
+    @Override
+    public void close() {
+        // nothing kept open
+    }
+
+    /**
+     * Writes the snapshot to the file. The file is written next to the
+     * current one, synced and renamed afterwards, so the current file stays
+     * intact until the new one is complete. It becomes the previous
+     * generation, which is read if the new one gets damaged.
+     * This can be called from a background thread.
+     * @param snapshot the snapshot to write
+     * @return true when successful, false otherwise
+     */
+    @Override
+    public boolean write(DataSnapshot snapshot) {
+        int count = snapshot.size();
+        byte[][] names = new byte[count][];
+        int nameTableLength = 0;
+        for(int i = 0; i < count; i++) {
+            names[i] = snapshot.getName(i).getBytes(CHARSET);
+            nameTableLength += names[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE + nameTableLength);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(count);
+        buffer.putInt(snapshot.getNextItemId());
+        buffer.putInt(nameTableLength);
+        buffer.putLong(snapshot.getModificationCount());
+
+        int nameOffset = 0;
+        for(int i = 0; i < count; i++) {
+            buffer.putInt(snapshot.getId(i));
+            buffer.putInt(snapshot.getCritValue(i));
+            buffer.putInt(snapshot.getDefValue(i));
+            buffer.putInt(snapshot.getInventoryAmount(i));
+            buffer.putInt(snapshot.getShoppingAmount(i));
+            buffer.putInt(nameOffset);
+            buffer.putInt(names[i].length);
+            buffer.put((byte) snapshot.getUnit(i).ordinal());
+            buffer.put(new byte[3]);
+            buffer.putLong(snapshot.getChangeVersion(i));
+            nameOffset += names[i].length;
+        }
+        for(byte[] name : names) {
+            buffer.put(name);
+        }
+        buffer.flip();
+
+        SafeFile safeFile = new SafeFile(m_file, true);
+        OutputStream out = null;
+        try {
+            out = safeFile.startWrite();
+            out.write(buffer.array(), 0, buffer.limit());
+        } catch (IOException e) {
+            e.printStackTrace();
+            safeFile.failWrite(out);
+            return false;
+        }
+        return safeFile.finishWrite(out);
+    }
+
+    /**
+     * Reads the items and lists from the file into the
+     * ItemProvider and ListProvider, which should be empty.
+     * Ids below the next item id in the file are reserved.
+     * If the file is missing, damaged or does not match its checksum,
+     * the previous generation of the file is read instead. Anything
+     * read from a damaged file is cleared again before.
+     * @return CURRENT if the file was read, PREVIOUS if the previous
+     *  generation was read, NONE if neither could be read
+     * @see SafeFile
+     */
+    @Override
+    public int read() {
+        SafeFile safeFile = new SafeFile(m_file, true);
+        ByteBuffer buffer = safeFile.readCurrent();
+        if(buffer != null && read(buffer)) {
+            return CURRENT;
+        }
+        clear();
+        buffer = safeFile.readPrevious();
+        if(buffer != null && read(buffer)) {
+            return PREVIOUS;
+        }
+        clear();
+        return NONE;
+    }
+
+    /**
+     * Removes everything read from a damaged file.
+     */
+    private static void clear() {
+        ListProvider.getInstance().clear();
+        ItemProvider.getInstance().clear();
+    }
+
+    /**
+     * Parses the content of the file.
+     * The items are added through a BulkLoad, once all of them were read.
+     * The modification count is restored before, so the items keep their
+     * change versions and later changes get higher ones.
+     * @param buffer the content of the file
+     * @return true when successful, false otherwise
+     */
+    private static boolean read(ByteBuffer buffer) {
+        if(buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return false;
+        }
+        int count = buffer.getInt(8);
+        int nextItemId = buffer.getInt(12);
+        int nameTableLength = buffer.getInt(16);
+        long expectedSize = HEADER_SIZE + (long) count * RECORD_SIZE + nameTableLength;
+        if(count < 0 || nameTableLength < 0 || buffer.remaining() != expectedSize) {
+            return false;
+        }
+        long modificationCount = buffer.getLong(20);
+
+        // copy the names at once, so strings are created from a plain array
+        byte[] nameTable = new byte[nameTableLength];
+        buffer.position(HEADER_SIZE + count * RECORD_SIZE);
+        buffer.get(nameTable);
+
+        Item.UNIT[] units = Item.UNIT.values();
+        ItemProvider itemProvider = ItemProvider.getInstance();
+        BulkLoad load = itemProvider.beginBulkLoad(count);
+        for(int i = 0; i < count; i++) {
+            int pos = HEADER_SIZE + i * RECORD_SIZE;
+            int nameOffset = buffer.getInt(pos + 20);
+            int nameLength = buffer.getInt(pos + 24);
+            int unit = buffer.get(pos + 28);
+            if(nameOffset < 0 || nameLength < 0 || nameOffset + nameLength > nameTableLength
+                    || unit < 0 || unit >= units.length) {
+                return false;
+            }
+            long changeVersion = buffer.getLong(pos + 32);
+            if(changeVersion < 0 || changeVersion > modificationCount) {
+                return false;
+            }
+            String name = new String(nameTable, nameOffset, nameLength, CHARSET);
+            load.add(buffer.getInt(pos), name, units[unit], buffer.getInt(pos + 4), buffer.getInt(pos + 8),
+                    buffer.getInt(pos + 12), buffer.getInt(pos + 16), changeVersion);
+        }
+        // only a file read completely is loaded
+        itemProvider.restoreModificationCount(modificationCount);
+        load.commit();
+        itemProvider.reserveIdsBelow(nextItemId);
+        return true;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import de.phaberland.inventoryApp.data.BulkLoad;
+import de.phaberland.inventoryApp.data.DataSnapshot;
+import de.phaberland.inventoryApp.data.Item;
+import de.phaberland.inventoryApp.data.ItemProvider;
+
+/**
+ * SqliteBackend stores the items and lists in a SQLite database
+ * within the application files folder.
+ *
+ * Every item is a row keyed by its id, holding its values, its amounts
+ * in the inventory and shopping list (-1 if not in the list) and its
+ * change version. The next item id and the modification count of the
+ * data written last are kept in a separate table.
+ *
+ * Unlike the file backends the database is not written completely
+ * every time. Only the rows of items changed since the last write are
+ * replaced, within a single transaction, so writing takes time depending
+ * on the number of changes. Items are only ever removed all at once,
+ * after which all items are new, so when every item changed, or the
+ * content of the database is not known, all rows are written again.
+ *
+ * The change versions are indexed, so the items changed after a given
+ * version are queried from the database without reading all rows, which
+ * is used to export the changes. Items are not looked up by name and unit
+ * in the database, the duplicate check of the ItemProvider has to see the
+ * changes not written yet, so it uses its own index in memory.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ * @see DataSnapshot#getChangeVersion(int)
+ */
+class SqliteBackend extends SQLiteOpenHelper implements StorageBackend {
+    static final String DATABASE = "inventory.db";
+    private static final int SCHEMA_VERSION = 1;
+
+    // keys within the state table
+    private static final String NEXT_ITEM_ID = "next_item_id";
+    private static final String MODIFICATION_COUNT = "modification_count";
+
+    private static final String SELECT_ITEMS = "SELECT id, name, unit, crit, def, inventory, shopping, change_version"
+            + " FROM items";
+
+    // modification count of the data read or written last, 0 if not known
+    private long m_writtenVersion = 0;
+
+    /**
+     * Constructs the backend for the database of the application.
+     * The database is opened on first use.
+     * @param context context providing the application files folder
+     */
+    SqliteBackend(Context context) {
+        super(context, DATABASE, null, SCHEMA_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE items ("
+                + "id INTEGER PRIMARY KEY, "
+                + "name TEXT NOT NULL, "
+                + "unit INTEGER NOT NULL, "
+                + "crit INTEGER NOT NULL, "
+                + "def INTEGER NOT NULL, "
+                + "inventory INTEGER NOT NULL, "
+                + "shopping INTEGER NOT NULL, "
+                + "change_version INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX items_change_version ON items (change_version)");
+        db.execSQL("CREATE TABLE state (key TEXT PRIMARY KEY, value INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // there is only a single schema so far
+    }
+
+    @Override
+    public String getName() {
+        return SQLITE;
+    }
+
+    /**
+     * Reads all rows through a BulkLoad, which is committed
+     * once all of them were read. A database, which was never
+     * written completely, is not read at all.
+     * @return CURRENT if the database was read, NONE otherwise
+     */
+    @Override
+    public int read() {
+        try {
+            SQLiteDatabase db = getReadableDatabase();
+            long[] state = readState(db);
+            if(state == null) {
+                return NONE;
+            }
+
+            ItemProvider itemProvider = ItemProvider.getInstance();
+            BulkLoad load;
+            Cursor rows = db.rawQuery(SELECT_ITEMS, null);
+            try {
+                load = itemProvider.beginBulkLoad(rows.getCount());
+                if(!readRows(rows, load)) {
+                    return NONE;
+                }
+            } finally {
+                rows.close();
+            }
+            // only a database read completely is loaded
+            itemProvider.restoreModificationCount(state[1]);
+            load.commit();
+            itemProvider.reserveIdsBelow((int) state[0]);
+            m_writtenVersion = state[1];
+            return CURRENT;
+        } catch (RuntimeException e) {
+            // SQLiteException and the like
+            e.printStackTrace();
+            return NONE;
+        }
+    }
+
+    /**
+     * Queries the items changed after the given version, as written last,
+     * in the order they were changed. Only the changed rows are read through
+     * the index on the change version, so this takes time depending on the
+     * number of changes. Changes not written yet are not included.
+     * @param version the version to get the changes after, 0 for all items
+     * @return a snapshot of the changed items, its modification count is the one
+     *  of the data written last, null if the database could not be read
+     * @see ItemProvider#getChangesSince(long)
+     */
+    DataSnapshot readChangesSince(long version) {
+        try {
+            SQLiteDatabase db = getReadableDatabase();
+            long[] state = readState(db);
+            if(state == null) {
+                return null;
+            }
+            Cursor rows = db.rawQuery(SELECT_ITEMS + " WHERE change_version > ? ORDER BY change_version",
+                    new String[] { Long.toString(version) });
+            try {
+                BulkLoad load = ItemProvider.getInstance().beginBulkLoad(rows.getCount());
+                if(!readRows(rows, load)) {
+                    return null;
+                }
+                return load.toSnapshot((int) state[0], state[1]);
+            } finally {
+                rows.close();
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the rows of the items changed since the last write,
+     * or all rows if needed, in a single transaction.
+     * @param snapshot the snapshot of all items and lists
+     * @return true when successful, false otherwise
+     */
+    @Override
+    public boolean write(DataSnapshot snapshot) {
+        int count = snapshot.size();
+        int changed = 0;
+        for(int i = 0; i < count; i++) {
+            if(snapshot.getChangeVersion(i) > m_writtenVersion) {
+                changed++;
+            }
+        }
+        boolean rewrite = m_writtenVersion <= 0 || changed == count;
+
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                if(rewrite) {
+                    db.delete("items", null, null);
+                }
+                SQLiteStatement put = db.compileStatement("INSERT OR REPLACE INTO items"
+                        + " (id, name, unit, crit, def, inventory, shopping, change_version)"
+                        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+                try {
+                    for(int i = 0; i < count; i++) {
+                        if(!rewrite && snapshot.getChangeVersion(i) <= m_writtenVersion) {
+                            continue;
+                        }
+                        put.bindLong(1, snapshot.getId(i));
+                        put.bindString(2, snapshot.getName(i));
+                        put.bindLong(3, snapshot.getUnit(i).ordinal());
+                        put.bindLong(4, snapshot.getCritValue(i));
+                        put.bindLong(5, snapshot.getDefValue(i));
+                        put.bindLong(6, snapshot.getInventoryAmount(i));
+                        put.bindLong(7, snapshot.getShoppingAmount(i));
+                        put.bindLong(8, snapshot.getChangeVersion(i));
+                        put.executeInsert();
+                    }
+                } finally {
+                    put.close();
+                }
+                SQLiteStatement state = db.compileStatement("INSERT OR REPLACE INTO state (key, value) VALUES (?, ?)");
+                try {
+                    state.bindString(1, NEXT_ITEM_ID);
+                    state.bindLong(2, snapshot.getNextItemId());
+                    state.executeInsert();
+                    state.bindString(1, MODIFICATION_COUNT);
+                    state.bindLong(2, snapshot.getModificationCount());
+                    state.executeInsert();
+                } finally {
+                    state.close();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+        m_writtenVersion = snapshot.getModificationCount();
+        return true;
+    }
+
+    //////////////
+    // internal //
+    //////////////
+
+    /**
+     * Reads the next item id and the modification count of the data written last.
+     * @param db the database to read from
+     * @return the next item id and the modification count,
+     *  null if the database was never written completely
+     */
+    private static long[] readState(SQLiteDatabase db) {
+        long nextItemId = 0;
+        long modificationCount = -1;
+        Cursor state = db.rawQuery("SELECT key, value FROM state", null);
+        try {
+            while(state.moveToNext()) {
+                if(NEXT_ITEM_ID.equals(state.getString(0))) {
+                    nextItemId = state.getLong(1);
+                } else if(MODIFICATION_COUNT.equals(state.getString(0))) {
+                    modificationCount = state.getLong(1);
+                }
+            }
+        } finally {
+            state.close();
+        }
+        if(modificationCount < 0) {
+            return null;
+        }
+        return new long[] { nextItemId, modificationCount };
+    }
+
+    /**
+     * Adds the rows of a query of SELECT_ITEMS to the load.
+     * @param rows the rows to read
+     * @param load the load to add the items to
+     * @return true if all rows were read, false if a row is damaged
+     */
+    private static boolean readRows(Cursor rows, BulkLoad load) {
+        Item.UNIT[] units = Item.UNIT.values();
+        while(rows.moveToNext()) {
+            int unit = rows.getInt(2);
+            if(unit < 0 || unit >= units.length) {
+                return false;
+            }
+            load.add(rows.getInt(0), rows.getString(1), units[unit], rows.getInt(3), rows.getInt(4),
+                    rows.getInt(5), rows.getInt(6), rows.getLong(7));
+        }
+        return true;
+    }
+}
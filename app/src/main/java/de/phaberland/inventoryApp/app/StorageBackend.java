@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.app;
+
+import de.phaberland.inventoryApp.data.DataSnapshot;
+
+/**
+ * StorageBackend stores the items and lists within the application
+ * files, so they are read again on the next start of the process.
+ *
+ * A backend holds the complete data as it was written last.
+ * Changes since then are kept in the MutationJournal, which is the
+ * same for every backend and replayed on top of what the backend read.
+ * Once the journal got too big, the data is written to the backend again.
+ *
+ * The backend in use is part of the application state and can be
+ * switched at any time, then the data is written to the new backend
+ * first. The backends are
+ *  - CSV, the format also used to exchange data with the user
+ *  - BINARY, a memory mapped snapshot with checksum, which is the default
+ *  - SQLITE, a database updating only the rows of items changed since
+ *    it was written last
+ * All of them are used on the background thread of the
+ * PersistenceScheduler only.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ * @see InventoryApplication
+ */
+public interface StorageBackend {
+    String CSV = "csv";
+    String BINARY = "binary";
+    String SQLITE = "sqlite";
+
+    // which generation of the data was read
+    int NONE = 0;
+    int CURRENT = 1;
+    int PREVIOUS = 2;
+
+    /**
+     * @return the name the backend is stored with in the application state
+     */
+    String getName();
+
+    /**
+     * Reads the items and lists into the ItemProvider and ListProvider,
+     * which should be empty. Nothing is loaded, if reading fails.
+     * Ids below the next item id of the data are reserved.
+     * @return CURRENT if the data written last was read, PREVIOUS if
+     *  the data written before was read, as the last one is damaged,
+     *  NONE if nothing could be read
+     */
+    int read();
+
+    /**
+     * Writes the data of the snapshot, replacing the one written before.
+     * Once this returned true, the next read returns the written data.
+     * @param snapshot the snapshot of all items and lists
+     * @return true when successful, false otherwise
+     */
+    boolean write(DataSnapshot snapshot);
+
+    /**
+     * Releases anything held open by the backend,
+     * it is not used afterwards.
+     */
+    void close();
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BulkLoad adds lots of items and their amounts in the inventory
+ * and shopping list at once, like when reading a file.
+ *
+ * Adding items one by one informs the listeners, checks the critical
+ * value and sorts in every single item. A BulkLoad collects the items
+ * first, creating their search and sort keys without holding the
+ * write lock. On commit all items are added at once, the lists are
+ * sized to take all amounts, the alphabetical order is built in one go
+ * and the critical values are checked in a single pass over the inventory.
+ * Listeners are informed once, that the items were reloaded.
+ *
+ * Usage:
+ *  BulkLoad load = ItemProvider.getInstance().beginBulkLoad(expectedCount);
+ *  load.add(...) for every item
+ *  load.commit();
+ *
+ * Instead of being committed, a load can be merged into the
+ * current items, changing only what differs.
+ *
+ * A BulkLoad is meant to be used by a single thread. To fill loads on
+ * several threads, every thread uses its own load and they are joined
+ * by addAll before committing.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ * @see ItemProvider#beginBulkLoad(int)
+ */
+public class BulkLoad {
+    private final List<Item> m_items;
+    private int[] m_inventoryAmounts;
+    private int[] m_shopAmounts;
+    private boolean m_committed = false;
+
+    /**
+     * Constructs an empty load.
+     * @param expectedCount the number of items expected
+     */
+    BulkLoad(int expectedCount) {
+        int capacity = Math.max(16, expectedCount);
+        m_items = new ArrayList<>(capacity);
+        m_inventoryAmounts = new int[capacity];
+        m_shopAmounts = new int[capacity];
+    }
+
+    /**
+     * Adds an item to the load. The id is kept, unless it is invalid
+     * or already used, then the item gets a new id on commit.
+     * @param id the id the item had before
+     * @param name name of the item
+     * @param unit unit of the item
+     * @param critValue critical value of the item
+     * @param defValue default shopping value of the item
+     * @param inventoryAmount amount in the inventory, -1 if not in the inventory
+     * @param shopAmount amount in the shopping list, -1 if not in the shopping list
+     */
+    public void add(int id, String name, Item.UNIT unit, int critValue, int defValue,
+                    int inventoryAmount, int shopAmount) {
+        add(id, name, unit, critValue, defValue, inventoryAmount, shopAmount, 0);
+    }
+
+    /**
+     * Adds an item, which keeps the change version it had before,
+     * like an item restored from a snapshot. The modification count
+     * of the ItemProvider has to be restored before committing,
+     * so later changes get higher versions.
+     * @param changeVersion the change version the item had before,
+     *  0 to give it a new one on commit
+     * @see #add(int, String, Item.UNIT, int, int, int, int)
+     * @see ItemProvider#restoreModificationCount(long)
+     */
+    public void add(int id, String name, Item.UNIT unit, int critValue, int defValue,
+                    int inventoryAmount, int shopAmount, long changeVersion) {
+        int index = m_items.size();
+        if(index == m_inventoryAmounts.length) {
+            m_inventoryAmounts = Arrays.copyOf(m_inventoryAmounts, index * 2);
+            m_shopAmounts = Arrays.copyOf(m_shopAmounts, index * 2);
+        }
+        Item item = new Item(id, name, unit, critValue, defValue);
+        item.setChangeVersion(changeVersion);
+        m_items.add(item);
+        m_inventoryAmounts[index] = inventoryAmount;
+        m_shopAmounts[index] = shopAmount;
+    }
+
+    /**
+     * Appends all items of another load, after the items added so far.
+     * Used to join loads filled on several threads in the original order.
+     * The other load must not be committed or used afterwards.
+     * @param other the load to append
+     */
+    public void addAll(BulkLoad other) {
+        int index = m_items.size();
+        int count = other.m_items.size();
+        if(index + count > m_inventoryAmounts.length) {
+            int capacity = Math.max(index + count, m_inventoryAmounts.length * 2);
+            m_inventoryAmounts = Arrays.copyOf(m_inventoryAmounts, capacity);
+            m_shopAmounts = Arrays.copyOf(m_shopAmounts, capacity);
+        }
+        m_items.addAll(other.m_items);
+        System.arraycopy(other.m_inventoryAmounts, 0, m_inventoryAmounts, index, count);
+        System.arraycopy(other.m_shopAmounts, 0, m_shopAmounts, index, count);
+    }
+
+    /**
+     * @return the number of items added so far
+     */
+    public int size() {
+        return m_items.size();
+    }
+
+    /**
+     * Returns the items added so far as a snapshot, in the order they
+     * were added, without adding them to the ItemProvider. Used for items
+     * read from storage, which are passed on instead of being loaded.
+     * The load can not be committed or merged afterwards.
+     * @param nextItemId the id, which will be given to the next created item
+     * @param modificationCount the modification count of the data read
+     * @return a snapshot of the added items
+     */
+    public DataSnapshot toSnapshot(int nextItemId, long modificationCount) {
+        if(m_committed) {
+            throw new IllegalStateException("bulk load already committed");
+        }
+        m_committed = true;
+        int count = m_items.size();
+        return new DataSnapshot(m_items, count, Arrays.copyOf(m_inventoryAmounts, count),
+                Arrays.copyOf(m_shopAmounts, count), nextItemId, modificationCount);
+    }
+
+    /**
+     * Adds all items of the load to the ItemProvider and
+     * the amounts to the inventory and shopping list.
+     * Items running out are put on the shopping list, like when
+     * adding them one by one. A load can be committed once only.
+     */
+    public void commit() {
+        if(m_committed) {
+            throw new IllegalStateException("bulk load already committed");
+        }
+        m_committed = true;
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            ItemProvider itemProvider = ItemProvider.getInstance();
+            itemProvider.registerAll(m_items);
+
+            ItemList inventory = ListProvider.getInstance().getListById(ItemList.INVENTORY_LIST_ID);
+            ItemList shopping = ListProvider.getInstance().getListById(ItemList.SHOPPING_LIST_ID);
+            loadList(inventory, m_inventoryAmounts);
+            loadList(shopping, m_shopAmounts);
+            StockThresholdEngine.getInstance().reload(inventory);
+
+            itemProvider.notifyItemsReloaded();
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Merges the items of the load into the current items and lists,
+     * instead of replacing them. Every item of the load is matched to
+     * an existing item by name and unit, the ids of the load are ignored,
+     * as they might come from another device. Only values and amounts
+     * differing from the current ones are changed, items not existing
+     * yet are created. Changes are done one by one, so listeners are
+     * informed as usual and the time taken depends on the size of the
+     * load, not on the number of existing items.
+     * The amounts of the load replace the current ones, -1 takes the
+     * item off the list. That includes the shopping list, so items running
+     * out are not added to it by the StockThresholdEngine, whose listeners
+     * are not informed during the merge. A load can be committed or merged once only.
+     * @param keepMissing true to leave items, which are not in the load,
+     *  untouched, false to take them off the inventory and shopping list,
+     *  which takes time depending on the size of the lists
+     */
+    public void merge(boolean keepMissing) {
+        if(m_committed) {
+            throw new IllegalStateException("bulk load already committed");
+        }
+        m_committed = true;
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            ItemProvider itemProvider = ItemProvider.getInstance();
+            ItemList inventory = ListProvider.getInstance().getListById(ItemList.INVENTORY_LIST_ID);
+            ItemList shopping = ListProvider.getInstance().getListById(ItemList.SHOPPING_LIST_ID);
+            IntIntMap merged = keepMissing ? null : new IntIntMap(m_items.size());
+            // the load holds the shopping amounts to end up with, so items crossing
+            // their critical value are not put on the shopping list in between
+            StockThresholdEngine engine = StockThresholdEngine.getInstance();
+            engine.setMuted(true);
+            try {
+                mergeItems(itemProvider, inventory, shopping, merged);
+            } finally {
+                engine.setMuted(false);
+            }
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Merges the amounts of all loaded items and removes the missing ones,
+     * while holding the write lock.
+     * @param itemProvider the provider of the items
+     * @param inventory the inventory list
+     * @param shopping the shopping list
+     * @param merged collects the ids of the merged items, null to keep missing items
+     */
+    private void mergeItems(ItemProvider itemProvider, ItemList inventory, ItemList shopping, IntIntMap merged) {
+        for(int i = 0; i < m_items.size(); i++) {
+            Item loaded = m_items.get(i);
+            int id = itemProvider.findExistingItem(loaded.getM_name(), loaded.getM_unit());
+            if(id == -1) {
+                id = itemProvider.addItem(loaded.getM_name(), loaded.getM_unit());
+            }
+            Item item = itemProvider.getItemById(id);
+            // the setters do nothing, if the value did not change
+            item.setM_critValue(loaded.getM_critValue());
+            item.setM_defValue(loaded.getM_defValue());
+            mergeAmount(inventory, item, m_inventoryAmounts[i]);
+            mergeAmount(shopping, item, m_shopAmounts[i]);
+            if(merged != null) {
+                merged.put(id, 1);
+            }
+        }
+        if(merged != null) {
+            removeMissing(inventory, merged);
+            removeMissing(shopping, merged);
+        }
+    }
+
+    /**
+     * Sets the amount of the item in the list, if it differs.
+     * @param list the list to change
+     * @param item the item to change
+     * @param amount the new amount, -1 if the item is not on the list
+     */
+    private static void mergeAmount(ItemList list, Item item, int amount) {
+        int current = list.getAmountForId(item.getM_id());
+        if(amount == current) {
+            return;
+        }
+        if(amount == -1) {
+            list.remove(item.getM_id());
+        } else if(current == -1) {
+            list.add(item, amount);
+        } else {
+            list.add(item, amount - current);
+        }
+    }
+
+    /**
+     * Takes all items off the list, which are not in the given map.
+     */
+    private static void removeMissing(ItemList list, IntIntMap merged) {
+        int[] missing = new int[list.size()];
+        int count = 0;
+        IntIntMap.Cursor cursor = list.getContentCursor();
+        while(cursor.moveToNext()) {
+            if(!merged.containsKey(cursor.getKey())) {
+                missing[count++] = cursor.getKey();
+            }
+        }
+        // not while walking the list
+        for(int i = 0; i < count; i++) {
+            list.remove(missing[i]);
+        }
+    }
+
+    /**
+     * Sets the amounts of the items, which are in the list.
+     * Ids are taken from the registered items, as they might have changed.
+     */
+    private void loadList(ItemList list, int[] amounts) {
+        int count = m_items.size();
+        int[] ids = new int[count];
+        int[] listAmounts = new int[count];
+        int listCount = 0;
+        for(int i = 0; i < count; i++) {
+            if(amounts[i] != -1) {
+                ids[listCount] = m_items.get(i).getM_id();
+                listAmounts[listCount] = amounts[i];
+                listCount++;
+            }
+        }
+        list.load(ids, listAmounts, listCount);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ChangeLog keeps the items in the order they were changed last,
+ * so the items changed since a given change version are found
+ * without looking at the items, which did not change.
+ *
+ * Every change appends the item together with its new change version.
+ * Versions only grow, so the log is sorted by version and the first
+ * change after a version is found by binary search. The entry of an
+ * item becomes stale, once the item is changed again. Stale entries
+ * are skipped and dropped, when the log would have to grow otherwise.
+ *
+ * The log is changed while holding the write lock of the ItemProvider.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ * @see Item#getChangeVersion()
+ */
+class ChangeLog {
+    private static final Comparator<Item> BY_VERSION = new Comparator<Item>() {
+        @Override
+        public int compare(Item a, Item b) {
+            long va = a.getChangeVersion();
+            long vb = b.getChangeVersion();
+            return va < vb ? -1 : (va == vb ? 0 : 1);
+        }
+    };
+
+    private Item[] m_items = new Item[16];
+    private long[] m_versions = new long[16];
+    private int m_size;
+
+    /**
+     * Appends a change of the item. The change version
+     * of the item must already be set to the given version,
+     * which must not be below the versions in the log.
+     * @param item the changed item
+     */
+    void add(Item item) {
+        if(m_size == m_items.length) {
+            makeRoom(1);
+        }
+        m_items[m_size] = item;
+        m_versions[m_size] = item.getChangeVersion();
+        m_size++;
+    }
+
+    /**
+     * Appends the items with the change versions they already carry,
+     * like when restoring them from a file. The items may be in any order.
+     * @param items the items to append
+     */
+    void addAll(List<Item> items) {
+        Item[] sorted = items.toArray(new Item[items.size()]);
+        Arrays.sort(sorted, BY_VERSION);
+        if(sorted.length > 0 && m_size > 0 && sorted[0].getChangeVersion() < m_versions[m_size - 1]) {
+            // older than changes already logged, which only happens when loading into
+            // existing items, so rebuild the whole log instead of keeping it sorted
+            List<Item> all = getChangedSince(Long.MIN_VALUE);
+            all.addAll(items);
+            clear();
+            addAll(all);
+            return;
+        }
+        if(m_size + sorted.length > m_items.length) {
+            makeRoom(sorted.length);
+        }
+        for(Item item : sorted) {
+            m_items[m_size] = item;
+            m_versions[m_size] = item.getChangeVersion();
+            m_size++;
+        }
+    }
+
+    /**
+     * Returns the items changed after the given version
+     * in the order they were changed.
+     * Takes time depending on the number of changes since then.
+     * @param version the version to get the changes after
+     * @return a new list of the changed items
+     */
+    List<Item> getChangedSince(long version) {
+        // first entry above the version
+        int low = 0;
+        int high = m_size;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(m_versions[mid] <= version) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<Item> items = new ArrayList<>(m_size - low);
+        for(int i = low; i < m_size; i++) {
+            if(isLive(i)) {
+                items.add(m_items[i]);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        Arrays.fill(m_items, 0, m_size, null);
+        m_size = 0;
+    }
+
+    /**
+     * @return true if the item of the entry did not change since
+     */
+    private boolean isLive(int index) {
+        return m_items[index].getChangeVersion() == m_versions[index];
+    }
+
+    /**
+     * Drops the stale entries, if they make up half of the log,
+     * grows the log otherwise. The order of the entries is kept.
+     * @param needed number of entries to make room for
+     */
+    private void makeRoom(int needed) {
+        int live = 0;
+        for(int i = 0; i < m_size; i++) {
+            if(isLive(i)) {
+                m_items[live] = m_items[i];
+                m_versions[live] = m_versions[i];
+                live++;
+            }
+        }
+        Arrays.fill(m_items, live, m_size, null);
+        m_size = live;
+        if(m_size * 2 > m_items.length || m_size + needed > m_items.length) {
+            int capacity = Math.max(m_items.length * 2, m_size + needed);
+            m_items = Arrays.copyOf(m_items, capacity);
+            m_versions = Arrays.copyOf(m_versions, capacity);
+        }
+    }
+}
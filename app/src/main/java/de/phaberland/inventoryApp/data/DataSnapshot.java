@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.data;
+
+/**
+ * DataSnapshot is an immutable copy of all items and their
+ * amounts in the inventory and shopping list at one point in time.
+ * It is created by the ItemProvider while holding the write lock,
+ * so it is consistent and can be read from any thread without
+ * locking, while the items and lists keep being changed.
+ *
+ * The values are kept in parallel arrays, the entry at an index
+ * belongs to the same item in every array. The items are in
+ * alphabetical order of their names, in a snapshot of the changes
+ * since a given modification count in the order they were changed.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ * @see ItemProvider#getSnapshot()
+ * @see ItemProvider#getChangesSince(long)
+ */
+public final class DataSnapshot {
+    private final int[] m_ids;
+    private final String[] m_names;
+    private final Item.UNIT[] m_units;
+    private final int[] m_critValues;
+    private final int[] m_defValues;
+    private final int[] m_inventoryAmounts;
+    private final int[] m_shoppingAmounts;
+    private final long[] m_changeVersions;
+    private final IntIntMap m_indexById;
+    private final int m_nextItemId;
+    private final long m_modificationCount;
+
+    /**
+     * Copies the values of the given items and their amounts
+     * in the inventory and shopping list.
+     * Must be called while holding the write lock.
+     * @param items the items in the order to keep
+     * @param count the number of items
+     * @param inventory the inventory list, may be null
+     * @param shopping the shopping list, may be null
+     * @param nextItemId the id, which will be given to the next created item
+     * @param modificationCount the modification count of the data at this point
+     */
+    DataSnapshot(Iterable<Item> items, int count, ItemList inventory, ItemList shopping,
+                 int nextItemId, long modificationCount) {
+        this(items, count, getAmounts(items, count, inventory), getAmounts(items, count, shopping),
+                nextItemId, modificationCount);
+    }
+
+    /**
+     * Copies the values of the given items, which are not added
+     * to the ItemProvider, like items read from storage.
+     * The arrays of the amounts are kept by the snapshot.
+     * @param items the items in the order to keep
+     * @param count the number of items
+     * @param inventoryAmounts the amounts in the inventory in the order of the items,
+     *  -1 if not in the inventory
+     * @param shoppingAmounts the amounts in the shopping list in the order of the items,
+     *  -1 if not in the shopping list
+     * @param nextItemId the id, which will be given to the next created item
+     * @param modificationCount the modification count of the data at this point
+     */
+    DataSnapshot(Iterable<Item> items, int count, int[] inventoryAmounts, int[] shoppingAmounts,
+                 int nextItemId, long modificationCount) {
+        m_ids = new int[count];
+        m_names = new String[count];
+        m_units = new Item.UNIT[count];
+        m_critValues = new int[count];
+        m_defValues = new int[count];
+        m_inventoryAmounts = inventoryAmounts;
+        m_shoppingAmounts = shoppingAmounts;
+        m_changeVersions = new long[count];
+        m_indexById = new IntIntMap(count);
+        m_nextItemId = nextItemId;
+        m_modificationCount = modificationCount;
+
+        int i = 0;
+        for(Item item : items) {
+            m_ids[i] = item.getM_id();
+            m_names[i] = item.getM_name();
+            m_units[i] = item.getM_unit();
+            m_critValues[i] = item.getM_critValue();
+            m_defValues[i] = item.getM_defValue();
+            m_changeVersions[i] = item.getChangeVersion();
+            m_indexById.put(item.getM_id(), i);
+            i++;
+        }
+    }
+
+    /**
+     * Looks up the amounts of the given items in a list.
+     * @param items the items in the order to keep
+     * @param count the number of items
+     * @param list the list, may be null
+     * @return the amounts in the order of the items, -1 if not in the list
+     */
+    private static int[] getAmounts(Iterable<Item> items, int count, ItemList list) {
+        int[] amounts = new int[count];
+        int i = 0;
+        for(Item item : items) {
+            amounts[i++] = list == null ? -1 : list.getAmountForId(item.getM_id());
+        }
+        return amounts;
+    }
+
+    /**
+     * @return the number of items in the snapshot
+     */
+    public int size() {
+        return m_ids.length;
+    }
+
+    /**
+     * Returns the index of an item within the snapshot.
+     * @param id id of the item
+     * @return the index of the item, -1 if it is not in the snapshot
+     */
+    public int indexOf(int id) {
+        return m_indexById.get(id, -1);
+    }
+
+    /////////////
+    // GETTERS //
+    /////////////
+
+    public int getId(int index) {
+        return m_ids[index];
+    }
+
+    public String getName(int index) {
+        return m_names[index];
+    }
+
+    public Item.UNIT getUnit(int index) {
+        return m_units[index];
+    }
+
+    public int getCritValue(int index) {
+        return m_critValues[index];
+    }
+
+    public int getDefValue(int index) {
+        return m_defValues[index];
+    }
+
+    /**
+     * @param index index of the item
+     * @return amount of the item in the inventory, -1 if not in the inventory
+     */
+    public int getInventoryAmount(int index) {
+        return m_inventoryAmounts[index];
+    }
+
+    /**
+     * @param index index of the item
+     * @return amount of the item in the shopping list, -1 if not in the shopping list
+     */
+    public int getShoppingAmount(int index) {
+        return m_shoppingAmounts[index];
+    }
+
+    /**
+     * @param index index of the item
+     * @return the modification count at the last change of the item or its amounts
+     */
+    public long getChangeVersion(int index) {
+        return m_changeVersions[index];
+    }
+
+    public int getNextItemId() {
+        return m_nextItemId;
+    }
+
+    /**
+     * @return the modification count of the data the snapshot was taken at
+     * @see ItemProvider#getModificationCount()
+     */
+    public long getModificationCount() {
+        return m_modificationCount;
+    }
+}
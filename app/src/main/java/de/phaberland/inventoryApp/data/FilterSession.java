@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.data;
+
+import java.util.Arrays;
+
+/**
+ * FilterSession remembers the result of the last filter request,
+ * to answer the next request while the user keeps typing.
+ * If the new filter contains the last filter, like "milk" after "mil",
+ * every match of the new filter also matched the last one, so only
+ * the last result needs to be narrowed down.
+ * When characters are deleted, the text is replaced or the items or
+ * the filtered list changed in between, a full search is done.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+class FilterSession {
+    private String m_lastFilter;
+    private int[] m_lastResult;
+    private int m_itemVersion;
+    private int m_listVersion;
+
+    /**
+     * Searches the items, which names contain the filter.
+     * If a list is given, only items in that list are returned.
+     * @param filter the filter text, not folded yet
+     * @param list the list to filter or null to filter all items
+     * @return ids of the matching items in ascending order
+     */
+    int[] search(String filter, ItemList list) {
+        ItemProvider provider = ItemProvider.getInstance();
+        String folded = Item.foldSearchKey(filter);
+        int itemVersion = provider.getVersion();
+        int listVersion = list == null ? 0 : list.getVersion();
+
+        int[] result;
+        if(m_lastFilter != null && folded.contains(m_lastFilter)
+                && itemVersion == m_itemVersion && listVersion == m_listVersion) {
+            result = narrow(folded);
+        } else {
+            result = provider.findItemsContainingFolded(folded);
+            if(list != null) {
+                result = intersect(result, list);
+            }
+        }
+
+        m_lastFilter = folded;
+        m_lastResult = result;
+        m_itemVersion = itemVersion;
+        m_listVersion = listVersion;
+        return result;
+    }
+
+    /**
+     * Forgets the last result, so the next search is a full search.
+     */
+    void reset() {
+        m_lastFilter = null;
+        m_lastResult = null;
+    }
+
+    /**
+     * Checks the items of the last result against the new filter.
+     * @param folded the folded filter
+     * @return ids of the items still matching in ascending order
+     */
+    private int[] narrow(String folded) {
+        ItemProvider provider = ItemProvider.getInstance();
+        int[] result = new int[m_lastResult.length];
+        int count = 0;
+        for(int id : m_lastResult) {
+            Item item = provider.getItemById(id);
+            if(item != null && item.getSearchKey().contains(folded)) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Keeps only the matches, which are in the list,
+     * walking whichever of both is smaller.
+     * @param matches ids of matching items in ascending order
+     * @param list the list to intersect with
+     * @return ids of the matching items in the list in ascending order
+     */
+    private static int[] intersect(int[] matches, ItemList list) {
+        int[] result = new int[Math.min(matches.length, list.size())];
+        int count = 0;
+        if(matches.length <= list.size()) {
+            for(int id : matches) {
+                if(list.getAmountForId(id) != -1) {
+                    result[count++] = id;
+                }
+            }
+        } else {
+            IntIntMap.Cursor cursor = list.getContentCursor();
+            while(cursor.moveToNext()) {
+                if(Arrays.binarySearch(matches, cursor.getKey()) >= 0) {
+                    result[count++] = cursor.getKey();
+                }
+            }
+            Arrays.sort(result, 0, count);
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
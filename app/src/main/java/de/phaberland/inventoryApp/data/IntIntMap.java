@@ -0,0 +1,256 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.data;
+
+import java.util.Arrays;
+
+/**
+ * IntIntMap maps int keys to int values without boxing.
+ * It is an open addressing hash table with linear probing,
+ * keys and values are stored in two plain arrays.
+ * Keys must not be negative, as negative keys mark free slots.
+ * This is fine for the ids of items, which are never negative.
+ *
+ * The map is iterated with a Cursor, the map must not be
+ * changed while a cursor is used.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+public final class IntIntMap {
+    private static final int FREE_KEY = -1;
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] m_keys;
+    private int[] m_values;
+    private int m_size;
+    private int m_mask;
+
+    /**
+     * Cursor to iterate over the entries of an IntIntMap.
+     * Call moveToNext before accessing the first entry,
+     * like with android database cursors.
+     */
+    public final class Cursor {
+        private int m_slot = -1;
+
+        /**
+         * Moves the cursor to the next entry.
+         * @return true if there is another entry, false if the end is reached
+         */
+        public boolean moveToNext() {
+            while(++m_slot < m_keys.length) {
+                if(m_keys[m_slot] != FREE_KEY) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int getKey() {
+            return m_keys[m_slot];
+        }
+
+        public int getValue() {
+            return m_values[m_slot];
+        }
+    }
+
+    /**
+     * Constructs an empty map.
+     */
+    IntIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty map, which is able to take
+     * the expected number of entries without growing.
+     * @param expectedSize number of entries expected
+     */
+    IntIntMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while(capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Returns the value mapped to the key.
+     * @param key the key to look up
+     * @param missingValue value to return if the key is not in the map
+     * @return the value for the key or missingValue
+     */
+    public int get(int key, int missingValue) {
+        int slot = findSlot(key);
+        return m_keys[slot] == key ? m_values[slot] : missingValue;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return true if the key is in the map, false otherwise
+     */
+    public boolean containsKey(int key) {
+        return m_keys[findSlot(key)] == key;
+    }
+
+    /**
+     * Adds delta to the value mapped to the key with a single lookup.
+     * If the key is not in the map yet, it will be added with delta as value.
+     * @param key the key to add to
+     * @param delta the value to add
+     * @return the new value mapped to the key
+     */
+    int addAndGet(int key, int delta) {
+        int slot = findSlot(key);
+        if(m_keys[slot] == key) {
+            m_values[slot] += delta;
+            return m_values[slot];
+        }
+        insertAt(slot, key, delta);
+        return delta;
+    }
+
+    /**
+     * Maps the value to the key, replacing a possibly existing value.
+     * @param key the key
+     * @param value the value
+     */
+    void put(int key, int value) {
+        int slot = findSlot(key);
+        if(m_keys[slot] == key) {
+            m_values[slot] = value;
+        } else {
+            insertAt(slot, key, value);
+        }
+    }
+
+    /**
+     * Removes the key from the map.
+     * Following entries are shifted back, so no tombstones are needed.
+     * @param key the key to remove
+     * @param missingValue value to return if the key is not in the map
+     * @return the value, which was mapped to the key or missingValue
+     */
+    int remove(int key, int missingValue) {
+        int slot = findSlot(key);
+        if(m_keys[slot] != key) {
+            return missingValue;
+        }
+        int value = m_values[slot];
+        m_size--;
+
+        // shift back following entries of the probe sequence
+        int free = slot;
+        int next = (free + 1) & m_mask;
+        while(m_keys[next] != FREE_KEY) {
+            int home = hash(m_keys[next]);
+            // move the entry, if its home slot is not between the free and its current slot
+            if(((next - home) & m_mask) >= ((next - free) & m_mask)) {
+                m_keys[free] = m_keys[next];
+                m_values[free] = m_values[next];
+                free = next;
+            }
+            next = (next + 1) & m_mask;
+        }
+        m_keys[free] = FREE_KEY;
+        return value;
+    }
+
+    /**
+     * Grows the map, so it is able to take the given number of
+     * additional entries without growing again.
+     * @param additionalSize number of entries about to be added
+     */
+    void ensureCapacity(int additionalSize) {
+        int capacity = m_keys.length;
+        while(capacity < (m_size + additionalSize) * 2) {
+            capacity <<= 1;
+        }
+        if(capacity != m_keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Removes all entries, keeping the allocated capacity.
+     */
+    void clear() {
+        Arrays.fill(m_keys, FREE_KEY);
+        m_size = 0;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    /**
+     * @return a new cursor positioned before the first entry
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    //////////////
+    // internal //
+    //////////////
+
+    /**
+     * Returns the slot holding the key or the free slot,
+     * where the key would be inserted.
+     */
+    private int findSlot(int key) {
+        if(key < 0) {
+            throw new IllegalArgumentException("negative key: " + key);
+        }
+        int slot = hash(key);
+        while(m_keys[slot] != FREE_KEY && m_keys[slot] != key) {
+            slot = (slot + 1) & m_mask;
+        }
+        return slot;
+    }
+
+    private void insertAt(int slot, int key, int value) {
+        m_keys[slot] = key;
+        m_values[slot] = value;
+        m_size++;
+        // keep the load factor at 0.5 at most
+        if(m_size * 2 > m_keys.length) {
+            rehash(m_keys.length * 2);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = m_keys;
+        int[] oldValues = m_values;
+        allocate(capacity);
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != FREE_KEY) {
+                int slot = findSlot(oldKeys[i]);
+                m_keys[slot] = oldKeys[i];
+                m_values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        m_keys = new int[capacity];
+        m_values = new int[capacity];
+        Arrays.fill(m_keys, FREE_KEY);
+        m_mask = capacity - 1;
+    }
+
+    private int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & m_mask;
+    }
+}
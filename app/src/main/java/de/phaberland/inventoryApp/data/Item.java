@@ -6,15 +6,32 @@
 
 package de.phaberland.inventoryApp.data;
 
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.Locale;
+
 /**
  * Item class is the base Item within the lists.
  * Item has:
  *  - id, from which it is identified uniquely,
- *  - name, which is human readable and will be displayed
+ *  - name, which is human readable and will be displayed,
+ *    stored normalized, so names typed differently compare equal everywhere
  *  - unit specifying the measuring unit of the item
  *  - critValue specifying the critical value to mark the item running out and adding it to shopping
  *  - defValue default shopping value, which is the standard value shopped for that item
  *
+ * Derived from the name the item also caches
+ *  - a search key, which is the name folded to lower case without accents
+ *  - a sort key, the collation key as bytes to sort the items by the rules of the device locale
+ * Both are refreshed whenever the name changes.
+ *
+ * Every change of the item or its amounts in the lists gives it a new
+ * change version, which is used to export only the items changed
+ * since a given version.
+ *
+ * The setters hold the write lock of the ItemProvider,
+ * so snapshots never see an item half way changed.
+ *
  * @author      Peter Haberland
  * @version     %I%, %G%
  */
@@ -28,24 +45,45 @@ public class Item {
         MILILITER,
         PIECE
     }
-    private int m_id;
+    private final int m_id;
     private String m_name;
     private int m_critValue;
     private int m_defValue;
     private UNIT m_unit;
+    private String m_searchKey;
+    private byte[] m_sortKey;
+    // modification count of the ItemProvider at the last change, guarded by its write lock
+    private long m_changeVersion;
+
+    /**
+     * Collators are not thread safe, every thread gets its own copy of
+     * the same collator, so items can be created on several threads at once
+     * and their sort keys, made by the same rules, can be compared.
+     */
+    private static final Collator s_collatorPrototype = Collator.getInstance(Locale.getDefault());
+    private static final ThreadLocal<Collator> s_collator = new ThreadLocal<Collator>() {
+        @Override
+        protected Collator initialValue() {
+            synchronized (s_collatorPrototype) {
+                return (Collator) s_collatorPrototype.clone();
+            }
+        }
+    };
 
     /**
      * Constructs an instance of an Item.
      * Id will be provided by the ItemProvider, name and unit are set from the parameter.
      * Mostly this is all we get for an item, so the constructor will also initialize
      * default values for defValue and critValue depending on the unit.
+     * @param id the id of the item, handed out by the ItemProvider
      * @param name String name of the item
      * @param unit unit of the item
      * @see UNIT
      */
-    Item(String name, UNIT unit) {
-        m_id = ItemProvider.getInstance().getNextId();
-        m_name = name;
+    Item(int id, String name, UNIT unit) {
+        m_id = id;
+        m_name = normalizeName(name);
+        updateKeys();
         m_unit = unit;
         int tmpDef = 1;
         int tmpCrit = 0;
@@ -57,6 +95,24 @@ public class Item {
         m_defValue = tmpDef;
     }
 
+    /**
+     * Constructs an instance of an Item with the given values,
+     * like an item read from a file.
+     * @param id the id of the item, handed out by the ItemProvider
+     * @param name String name of the item
+     * @param unit unit of the item
+     * @param critValue the critical value of the item
+     * @param defValue the default shopping value of the item
+     */
+    Item(int id, String name, UNIT unit, int critValue, int defValue) {
+        m_id = id;
+        m_name = normalizeName(name);
+        updateKeys();
+        m_unit = unit;
+        m_critValue = critValue;
+        m_defValue = defValue;
+    }
+
     ///////////////////
     // GETTER/SETTER //
     ///////////////////
@@ -65,19 +121,20 @@ public class Item {
         return m_id;
     }
 
-    /**
-     * dangerous... should only be used by the itemProvider when sorting...
-     */
-    void setM_id(int id) {
-        m_id = id;
-    }
-
     public String getM_name() {
         return m_name;
     }
 
     public void setM_name(String name) {
-        m_name = name;
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            String oldName = m_name;
+            m_name = normalizeName(name);
+            updateKeys();
+            ItemProvider.getInstance().onItemKeyChanged(this, oldName, m_unit);
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
     }
 
     public int getM_critValue() {
@@ -85,7 +142,16 @@ public class Item {
     }
 
     public void setM_critValue(int m_critValue) {
-        this.m_critValue = m_critValue;
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            if(this.m_critValue == m_critValue) {
+                return;
+            }
+            this.m_critValue = m_critValue;
+            ItemProvider.getInstance().onItemValuesChanged(this);
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
     }
 
     public int getM_defValue() {
@@ -93,7 +159,46 @@ public class Item {
     }
 
     public void setM_defValue(int m_defValue) {
-        this.m_defValue = m_defValue;
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            if(this.m_defValue == m_defValue) {
+                return;
+            }
+            this.m_defValue = m_defValue;
+            ItemProvider.getInstance().onItemValuesChanged(this);
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    public String getSearchKey() {
+        return m_searchKey;
+    }
+
+    /**
+     * @return the collation key of the name as bytes,
+     *  which are compared unsigned one by one
+     */
+    public byte[] getSortKey() {
+        return m_sortKey;
+    }
+
+    /**
+     * Returns the modification count of the ItemProvider at the time the
+     * item, or its amount in the inventory or shopping list, changed last.
+     * @return the change version, 0 if it was not registered yet
+     */
+    long getChangeVersion() {
+        return m_changeVersion;
+    }
+
+    /**
+     * Sets the change version. Only the ItemProvider and BulkLoad
+     * set it, while holding the write lock or before registering the item.
+     * @param changeVersion the new change version
+     */
+    void setChangeVersion(long changeVersion) {
+        m_changeVersion = changeVersion;
     }
 
     public UNIT getM_unit() {
@@ -101,7 +206,57 @@ public class Item {
     }
 
     public void setM_unit(UNIT unit) {
-        m_unit = unit;
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            UNIT oldUnit = m_unit;
+            m_unit = unit;
+            ItemProvider.getInstance().onItemKeyChanged(this, m_name, oldUnit);
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    //////////////////
+    // DERIVED KEYS //
+    //////////////////
+
+    /**
+     * Normalizes a name, before it is stored. The name is brought into
+     * unicode normal form, so composed and decomposed umlauts are the
+     * same, and surrounding whitespace is removed.
+     * @param name the name to normalize
+     * @return the normalized name
+     */
+    static String normalizeName(String name) {
+        return Normalizer.normalize(name, Normalizer.Form.NFC).trim();
+    }
+
+    /**
+     * Folds a text for searching. The text is decomposed, accents
+     * are dropped and the characters are converted to lower case,
+     * so "Müller" and "muller" have the same search key.
+     * Names and filters need to be folded the same way.
+     * @param text the text to fold
+     * @return the folded text
+     */
+    public static String foldSearchKey(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for(int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if(Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(Character.toLowerCase(c));
+            }
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Recalculates the search and sort key from the name.
+     */
+    private void updateKeys() {
+        m_searchKey = foldSearchKey(m_name);
+        m_sortKey = s_collator.get().getCollationKey(m_name).toByteArray();
     }
 
     //////////////////////////////////
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.data;
+
+/**
+ * ItemIdAllocator hands out the ids for newly created items.
+ * The ids are taken from a monotonic counter, which is never
+ * decreased, so an id once given to an item will not be handed
+ * out again, even if the item is removed or the items get sorted.
+ *
+ * The counter is persisted with the application state, ids read
+ * from a file are reserved, so new items will not collide with them.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+class ItemIdAllocator {
+    private int m_nextId;
+
+    /**
+     * Constructs an allocator starting with id 0.
+     */
+    ItemIdAllocator() {
+        m_nextId = 0;
+    }
+
+    /**
+     * Returns the next free id and advances the counter.
+     * @return an id not handed out before
+     */
+    int allocate() {
+        return m_nextId++;
+    }
+
+    /**
+     * Makes sure the given id will not be handed out
+     * by allocate anymore.
+     * @param id the id to reserve
+     */
+    void reserve(int id) {
+        advanceTo(id + 1);
+    }
+
+    /**
+     * Moves the counter forward to the given value.
+     * If the counter already is beyond the value nothing happens,
+     * the counter is never moved backwards.
+     * @param nextId the value the counter should at least have
+     */
+    void advanceTo(int nextId) {
+        if(nextId > m_nextId) {
+            m_nextId = nextId;
+        }
+    }
+
+    /**
+     * Returns the id, which will be handed out next,
+     * without advancing the counter.
+     * @return the next id
+     */
+    int getNextId() {
+        return m_nextId;
+    }
+}
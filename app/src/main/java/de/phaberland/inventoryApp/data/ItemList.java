@@ -6,7 +6,11 @@
 
 package de.phaberland.inventoryApp.data;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.phaberland.inventoryApp.interfaces.ItemListListener;
 
 /**
  * ItemList is the List containing Items and their respective amount within the list.
@@ -14,7 +18,10 @@ import java.util.HashMap;
  * There are two prefined list ids:
  *  - 0 always is the id of the inventory list (INVENTORY_LIST_ID)
  *  - 1 always is the id of the shopping list (SHOPPING_LIST_ID)
- * the contents of the lists are saved as a HashMap with the item as key and amount as value
+ * the contents of the lists are saved as an IntIntMap with the item id as key and amount as value
+ * Registered ItemListListeners are informed about every change of the content.
+ * Changes are done while holding the write lock of the ItemProvider, reading
+ * the content from another thread should be done using a DataSnapshot.
  *
  * @author      Peter Haberland
  * @version     %I%, %G%
@@ -25,7 +32,9 @@ public class ItemList {
     public static final int SHOPPING_LIST_ID = 1;
 
     private final int id;
-    private final HashMap<Item, Integer> m_content;
+    private final IntIntMap m_content;
+    private int m_version;
+    private final List<ItemListListener> m_listeners;
 
     /**
      * Constructs an instance of an ItemList.
@@ -41,7 +50,8 @@ public class ItemList {
             id = ListProvider.getInstance().getNextId();
         }
 
-        m_content = new HashMap<>();
+        m_content = new IntIntMap();
+        m_listeners = new ArrayList<>();
     }
 
     /**
@@ -56,25 +66,25 @@ public class ItemList {
      * Adds an item with the specified amount to the list.
      * If the item already exists in the list, the current amount
      * and the new amount are added.
-     * At the end a check will be done weather to add the item to 
-     * the shopping list.
      * @param item item to add to list
      * @param amount amount of item added to list
-     * @see #checkAddToShopping(Item, int)
      */
     public void add(Item item, int amount) {
-        if (hasItem(item)) {
-            Integer currentAmount = m_content.get(item);
-            if(currentAmount == null) {
-                currentAmount = 0;
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            boolean existed = m_content.containsKey(item.getM_id());
+            int newAmount = m_content.addAndGet(item.getM_id(), amount);
+            changed(item.getM_id());
+            for(ItemListListener listener : getListeners()) {
+                if(existed) {
+                    listener.amountChanged(id, item.getM_id(), newAmount - amount, newAmount);
+                } else {
+                    listener.itemAdded(id, item.getM_id(), newAmount);
+                }
             }
-            int newAmount = amount + currentAmount;
-            
-            m_content.put(item,newAmount);
-        } else {
-            m_content.put(item, amount);
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
         }
-        checkAddToShopping(item, amount);
     }
 
     /**
@@ -82,7 +92,19 @@ public class ItemList {
      * @param itemId id of the item to remove
      */
     public void remove(int itemId) {
-        m_content.remove(ItemProvider.getInstance().getItemById(itemId));
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            if(!m_content.containsKey(itemId)) {
+                return;
+            }
+            int oldAmount = m_content.remove(itemId, 0);
+            changed(itemId);
+            for(ItemListListener listener : getListeners()) {
+                listener.itemRemoved(id, itemId, oldAmount);
+            }
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
     }
 
     /**
@@ -91,48 +113,143 @@ public class ItemList {
      * by the amount given. 
      * If the new amount is <= 0 the item will be removed from the list,
      * otherwise the items amount will be updated
-     * At the end a check will be done weather to add the item to
-     * the shopping list.
      * @param item the item to remove from
      * @param amount the amount to remove
-     * @see #checkAddToShopping(Item, int)
      */
     public void remove(Item item, int amount) {
-        if(hasItem(item)) {
-            Integer currentAmount = m_content.get(item);
-            if(currentAmount == null) {
-                currentAmount = 0;
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            if(!hasItem(item)) {
+                return;
             }
-            int newAmount = currentAmount - amount;
-
+            int newAmount = m_content.addAndGet(item.getM_id(), -amount);
             if(newAmount <= 0) {
-                m_content.remove(item);
-            } else {
-                m_content.put(item, newAmount);
+                m_content.remove(item.getM_id(), 0);
+            }
+            changed(item.getM_id());
+            for(ItemListListener listener : getListeners()) {
+                if(newAmount <= 0) {
+                    listener.itemRemoved(id, item.getM_id(), newAmount + amount);
+                } else {
+                    listener.amountChanged(id, item.getM_id(), newAmount + amount, newAmount);
+                }
             }
-            checkAddToShopping(item, newAmount);
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
         }
     }
 
     /**
-     * Check if the amount mapped to the item is smaller than the
-     * critical value of the item. This is only done for items in
-     * the inventory, which need to get added to the shopping list.
-     * If the current amount is below the defined critical amount
-     * the Item will be added to shopping list.
-     * @param item the item to check
-     * @param newAmount the new amount to check
+     * Removes all items from the list.
      */
-    private void checkAddToShopping(Item item, int newAmount) {
-        if(newAmount <= item.getM_critValue() &&
-                id == INVENTORY_LIST_ID) {
-            if(ListProvider.getInstance().getListById(SHOPPING_LIST_ID).hasItem(item)) {
-                return;
+    void clear() {
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            if(id >= 0) {
+                // every item on the list lost its amount
+                IntIntMap.Cursor cursor = m_content.cursor();
+                while(cursor.moveToNext()) {
+                    ItemProvider.getInstance().markChanged(cursor.getKey());
+                }
+            }
+            m_content.clear();
+            changed(-1);
+            for(ItemListListener listener : getListeners()) {
+                listener.listCleared(id);
             }
-            ListProvider.getInstance().getListById(SHOPPING_LIST_ID).add(item,0);
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
         }
     }
 
+    /**
+     * Sets the amounts of many items at once, like when loading the lists.
+     * Listeners are not informed about the single items, the caller
+     * has to report the change as a whole.
+     * Must be called while holding the write lock of the ItemProvider.
+     * @param itemIds ids of the items
+     * @param amounts amount of each item
+     * @param count number of items to set
+     * @see BulkLoad
+     */
+    void load(int[] itemIds, int[] amounts, int count) {
+        m_content.ensureCapacity(count);
+        for(int i = 0; i < count; i++) {
+            m_content.put(itemIds[i], amounts[i]);
+        }
+        // the loaded items got their change version when they were registered
+        changed(-1);
+    }
+
+    /**
+     * Sets the content of a temporary list at once, like a filtered list.
+     * The list is not shared yet and nobody listens to it, so this needs
+     * no lock and does not mark anything as changed.
+     * @param itemIds ids of the items
+     * @param amounts amount of each item
+     * @param count number of items to set
+     * @throws IllegalStateException if the list is registered with the ListProvider
+     */
+    void fill(int[] itemIds, int[] amounts, int count) {
+        if(id >= 0) {
+            throw new IllegalStateException("only temporary lists can be filled");
+        }
+        m_content.ensureCapacity(count);
+        for(int i = 0; i < count; i++) {
+            m_content.put(itemIds[i], amounts[i]);
+        }
+    }
+
+    /**
+     * Registers a listener to be informed about changes of the content.
+     * Registering the same listener twice has no effect.
+     * @param listener the listener to register
+     */
+    public void addListener(ItemListListener listener) {
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            if(!m_listeners.contains(listener)) {
+                m_listeners.add(listener);
+            }
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    public void removeListener(ItemListListener listener) {
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            m_listeners.remove(listener);
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Marks the content as changed. Snapshots only contain
+     * registered lists, so temporary lists do not drop them.
+     * The changed item gets a new change version, as its
+     * amount is exported along with it.
+     * @param itemId id of the item, which amount changed, -1 for none
+     */
+    private void changed(int itemId) {
+        m_version++;
+        if(id >= 0) {
+            ItemProvider.getInstance().markChanged(itemId);
+        }
+    }
+
+    /**
+     * Returns a copy of the registered listeners, so
+     * listeners can change the list while being informed.
+     */
+    private List<ItemListListener> getListeners() {
+        if(m_listeners.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(m_listeners);
+    }
+
     /**
      * This is basically a wrapper for m_contents.containsKey to
      * be able to be accessed from outside.
@@ -140,7 +257,7 @@ public class ItemList {
      * @return true if the item is in the content, false otherwise
      */
     public boolean hasItem(Item item) {
-        return m_content.containsKey(item);
+        return item != null && m_content.containsKey(item.getM_id());
     }
 
     /**
@@ -150,14 +267,7 @@ public class ItemList {
      * @return amount of the item in the list, -1 if not in the list
      */
     public int getAmountForId(int itemId) {
-        Item item = ItemProvider.getInstance().getItemById(itemId);
-        if(hasItem(item)) {
-            Integer tmp = m_content.get(item);
-            if(tmp != null) {
-                return tmp;
-            }
-        }
-        return -1;
+        return m_content.get(itemId, -1);
     }
 
     /////////////
@@ -168,7 +278,30 @@ public class ItemList {
         return id;
     }
 
-    public HashMap<Item, Integer> getM_content() {
-        return m_content;
+    /**
+     * Returns a counter, which changes whenever the content changes.
+     * Used to tell if results derived from the list are still valid.
+     * @return the current version of the content
+     */
+    int getVersion() {
+        return m_version;
+    }
+
+    public int size() {
+        return m_content.size();
+    }
+
+    public boolean isEmpty() {
+        return m_content.isEmpty();
+    }
+
+    /**
+     * Returns a cursor to iterate over the content of the list,
+     * the key of an entry is the item id, the value is the amount.
+     * The list must not be changed while the cursor is used.
+     * @return a new cursor positioned before the first entry
+     */
+    public IntIntMap.Cursor getContentCursor() {
+        return m_content.cursor();
     }
 }
@@ -6,12 +6,17 @@
 
 package de.phaberland.inventoryApp.data;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.phaberland.inventoryApp.interfaces.ItemProviderListener;
 
 /**
  * ItemProvider is a singleton instance to be used the keep track
@@ -21,97 +26,444 @@ import java.util.Set;
  *
  * The ItemProvider should be initialized with a Map of items
  *
+ * Items keep the id they were created with. The alphabetical
+ * order is kept in a separate sorted index, which is updated
+ * on every change and can be accessed by position.
+ *
+ * Besides the items by id, an index keyed by unit and normalized
+ * name is kept, so duplicate detection does not need to walk
+ * all the items.
+ *
+ * Registered ItemProviderListeners are informed about every
+ * created or changed item. Listeners are kept over init and clear.
+ *
+ * All changes of items and lists are done while holding WRITE_LOCK,
+ * so there is a single writer at a time. Items can be looked up
+ * by id and by name and unit from any thread without locking. To work on all items in
+ * the background, like exporting, an immutable DataSnapshot is
+ * taken, which stays consistent while the data keeps changing.
+ * Every change increases the modification count, so callers
+ * persisting the data can tell if anything changed since.
+ * The count at the last change of an item or its list amounts is
+ * kept as change version of the item and the items are logged in
+ * the order they were changed, so the items changed since any count
+ * are found in time depending on the number of changes only.
+ * The indices used for sorting and filtering are meant to be
+ * used from the main thread only.
+ *
+ * Lots of items are loaded through a BulkLoad, which adds them and
+ * their list amounts at once and builds the indices in one go.
+ * While loading lots of items, building the sorted and search index
+ * can be deferred, so the items and lists are usable earlier. The
+ * deferred items are indexed step by step in the background, any
+ * access to the indices indexes the remaining items right away.
+ *
  * @author      Peter Haberland
  * @version     %I%, %G%
  */
 public class ItemProvider{
 
-    private static ItemProvider instance = null;
-    private HashMap<Integer,Item> m_allItems;
+    /**
+     * Lock to be held for every change of items or lists.
+     * It is reentrant, so listeners may change data while being informed.
+     */
+    static final ReentrantLock WRITE_LOCK = new ReentrantLock();
+
+    private final ConcurrentHashMap<Integer,Item> m_allItems = new ConcurrentHashMap<>();
+    // items by unit and name, read without locking, changed while holding WRITE_LOCK
+    private final EnumMap<Item.UNIT, ConcurrentHashMap<String, Item>> m_nameIndex = new EnumMap<>(Item.UNIT.class);
+    private SortedItemIndex m_sortedItems;
+    private NGramIndex m_searchIndex;
+    private FilterSession m_filterSession;
+    private int m_version;
+    private ItemIdAllocator m_idAllocator;
+    private final List<ItemProviderListener> m_listeners = new ArrayList<>();
+    private volatile DataSnapshot m_snapshot;
+    private volatile long m_modificationCount;
+    // items not in the sorted and search index yet, guarded by WRITE_LOCK
+    private final ArrayDeque<Item> m_unindexed = new ArrayDeque<>();
+    private volatile boolean m_deferIndexing;
+    // items by change version, guarded by WRITE_LOCK
+    private final ChangeLog m_changeLog = new ChangeLog();
+
+    /**
+     * Holds the instance, the class is loaded on first access
+     * to getInstance, which the class loader does thread safe.
+     */
+    private static class InstanceHolder {
+        static final ItemProvider INSTANCE = new ItemProvider();
+    }
+
+    /**
+     * Constructs the ItemProvider with an empty name index for every unit.
+     * The maps are never replaced, so they can be read without locking.
+     */
+    private ItemProvider() {
+        for(Item.UNIT unit : Item.UNIT.values()) {
+            m_nameIndex.put(unit, new ConcurrentHashMap<String, Item>());
+        }
+    }
 
     /**
      * standard singleton style getInstance.
+     * This is thread safe without locking.
      * @return the static instance of ItemProvider
      */
     public static ItemProvider getInstance() {
-        if(instance == null) {
-            instance = new ItemProvider();
-        }
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
 
     /**
      * init should be called before using the ItemProvider
      * to initialize the available items within the application.
      *
-     * The function initializes m_allItems with an empty HashMap
+     * The function empties m_allItems,
+     * empties the name index of every unit, sets up an
+     * empty alphabetical view. The id allocator starts at 0.
      */
     public void init() {
-        m_allItems = new HashMap<>();
+        WRITE_LOCK.lock();
+        try {
+            m_allItems.clear();
+            m_sortedItems = new SortedItemIndex();
+            m_searchIndex = new NGramIndex();
+            m_filterSession = new FilterSession();
+            m_unindexed.clear();
+            m_changeLog.clear();
+            m_deferIndexing = false;
+            m_version = 0;
+            m_idAllocator = new ItemIdAllocator();
+            for(ConcurrentHashMap<String, Item> names : m_nameIndex.values()) {
+                names.clear();
+            }
+            markModified();
+        } finally {
+            WRITE_LOCK.unlock();
+        }
     }
 
+    /**
+     * Removes all items and clears the name index and the alphabetical view.
+     * The id allocator is not reset, so ids of removed items are not reused.
+     */
     public void clear() {
-        m_allItems.clear();
+        WRITE_LOCK.lock();
+        try {
+            m_allItems.clear();
+            m_sortedItems.clear();
+            m_searchIndex.clear();
+            m_unindexed.clear();
+            m_changeLog.clear();
+            m_filterSession.reset();
+            m_version++;
+            for(ConcurrentHashMap<String, Item> names : m_nameIndex.values()) {
+                names.clear();
+            }
+            markModified();
+            for(ItemProviderListener listener : getListeners()) {
+                listener.itemsCleared();
+            }
+        } finally {
+            WRITE_LOCK.unlock();
+        }
     }
 
     /**
-     * Calls addItem function with sortList parameter set to true.
-     * @param name name of the item
-     * @param unit unit of the item
-     * @return id of the newly created item
-     * @see #addItem(String, Item.UNIT, boolean)
+     * Registers a listener to be informed about changed items.
+     * Registering the same listener twice has no effect.
+     * @param listener the listener to register
      */
-    public int addItem(String name, Item.UNIT unit) {
-        return addItem(name, unit, true);
+    public void addListener(ItemProviderListener listener) {
+        WRITE_LOCK.lock();
+        try {
+            if(!m_listeners.contains(listener)) {
+                m_listeners.add(listener);
+            }
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    public void removeListener(ItemProviderListener listener) {
+        WRITE_LOCK.lock();
+        try {
+            m_listeners.remove(listener);
+        } finally {
+            WRITE_LOCK.unlock();
+        }
     }
 
     /**
      * Creates a new Item with the given name und unit.
-     * The created item will be added to m_allItems.
-     * If sortList is true, sortItems will be called.
+     * The created item gets a new id from the id allocator,
+     * will be added to m_allItems and sorted in alphabetically.
      * Finally the id of the newly created item will be returned.
      *
      * You should call findExistingItem, before calling addItem,
      * to make sure you do not replace an already existing item.
      * @param name name of the item to create
      * @param unit unit if the item to create
-     * @param sortList should the list be sorted at the end?
      * @return the id of the newly created item.
-     * @see #sortItems()
      */
-    public int addItem(String name, Item.UNIT unit, boolean sortList) {
-        Item newItem = new Item(name, unit);
+    public int addItem(String name, Item.UNIT unit) {
+        WRITE_LOCK.lock();
+        try {
+            return registerItem(new Item(m_idAllocator.allocate(), name, unit));
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Creates an item with an id, that was handed out before,
+     * like an id read from a file. The id will be reserved,
+     * so the allocator will not hand it out again.
+     * If the id is invalid or already used by another item,
+     * a new id will be allocated instead.
+     * @param id the id the item had before
+     * @param name name of the item to create
+     * @param unit unit of the item to create
+     * @return the id of the restored item
+     */
+    public int restoreItem(int id, String name, Item.UNIT unit) {
+        WRITE_LOCK.lock();
+        try {
+            if(id < 0 || m_allItems.containsKey(id)) {
+                return addItem(name, unit);
+            }
+            m_idAllocator.reserve(id);
+            return registerItem(new Item(id, name, unit));
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Starts loading lots of items and their list amounts at once.
+     * Nothing is changed, until the load is committed.
+     * @param expectedCount the number of items expected, used to size the load
+     * @return a new, empty load
+     * @see BulkLoad
+     */
+    public BulkLoad beginBulkLoad(int expectedCount) {
+        return new BulkLoad(expectedCount);
+    }
+
+    /**
+     * Adds the items of a bulk load. Like restoreItem, the ids of the items
+     * are kept, an item which id is invalid or already used is replaced by
+     * a copy with a new id. The sorted index is built in one go, if it is
+     * empty. Listeners are not informed, the load does so once it is complete.
+     * Items carrying a change version, like items restored from a snapshot,
+     * keep it, all others get a new one.
+     * Must be called while holding WRITE_LOCK.
+     * @param items the items to add, replaced items are swapped in place
+     * @see BulkLoad#commit()
+     */
+    void registerAll(List<Item> items) {
+        for(int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            if(item.getM_id() < 0 || m_allItems.containsKey(item.getM_id())) {
+                item = new Item(m_idAllocator.allocate(), item.getM_name(), item.getM_unit(),
+                        item.getM_critValue(), item.getM_defValue());
+                items.set(i, item);
+            } else {
+                m_idAllocator.reserve(item.getM_id());
+            }
+            if(item.getChangeVersion() <= 0) {
+                item.setChangeVersion(++m_modificationCount);
+            }
+            m_allItems.put(item.getM_id(), item);
+            m_nameIndex.get(item.getM_unit()).put(item.getM_name(), item);
+        }
+        if(m_deferIndexing) {
+            m_unindexed.addAll(items);
+        } else {
+            m_sortedItems.insertAll(items);
+            for(Item item : items) {
+                m_searchIndex.add(item.getM_id(), item.getSearchKey());
+            }
+        }
+        m_changeLog.addAll(items);
+        m_version++;
+        markModified();
+    }
+
+    /**
+     * Informs the listeners, that lots of items were loaded at once.
+     * Must be called while holding WRITE_LOCK.
+     */
+    void notifyItemsReloaded() {
+        for(ItemProviderListener listener : getListeners()) {
+            listener.itemsReloaded();
+        }
+    }
+
+    /**
+     * Adds an item to m_allItems, the name index, the
+     * sorted index and the search index. If indexing is
+     * deferred, the item is only queued for the latter two.
+     * Must be called while holding WRITE_LOCK.
+     * @param newItem the item to add
+     * @return the id of the item
+     */
+    private int registerItem(Item newItem) {
         m_allItems.put(newItem.getM_id(), newItem);
-        if(sortList) {
-            sortItems();
+        m_nameIndex.get(newItem.getM_unit()).put(newItem.getM_name(), newItem);
+        if(m_deferIndexing) {
+            m_unindexed.add(newItem);
+        } else {
+            m_sortedItems.insert(newItem);
+            m_searchIndex.add(newItem.getM_id(), newItem.getSearchKey());
+        }
+        m_version++;
+        markChanged(newItem.getM_id());
+        for(ItemProviderListener listener : getListeners()) {
+            listener.itemAdded(newItem.getM_id());
         }
         return newItem.getM_id();
     }
 
     /**
-     * Sorts m_allItems alphabetically by name of
-     * the items.
+     * Has to be called by an item, whenever its name or unit changed,
+     * to move the item to its new key within the indices.
+     * Afterwards the listeners are informed about the change.
+     * Must be called while holding WRITE_LOCK.
+     * Items not registered with the ItemProvider are ignored.
+     * @param item the item that was changed
+     * @param oldName name of the item before the change
+     * @param oldUnit unit of the item before the change
      */
-    public void sortItems() {
-        Comparator<HashMap.Entry<Integer, Item>> valueComparator = new Comparator<HashMap.Entry<Integer,Item>>() {
+    void onItemKeyChanged(Item item, String oldName, Item.UNIT oldUnit) {
+        if(m_allItems.get(item.getM_id()) != item) {
+            return;
+        }
+        markChanged(item.getM_id());
+        ConcurrentHashMap<String, Item> oldNames = m_nameIndex.get(oldUnit);
+        if(oldNames.get(oldName) == item) {
+            oldNames.remove(oldName);
+        }
+        m_nameIndex.get(item.getM_unit()).put(item.getM_name(), item);
 
-            @Override
-            public int compare(HashMap.Entry<Integer, Item> e1, HashMap.Entry<Integer, Item> e2) {
-                String v1 = e1.getValue().getM_name();
-                String v2 = e2.getValue().getM_name();
-                return v1.compareTo(v2);
+        // the name might have changed, so move the item within the sorted and search index,
+        // an item still queued for indexing is indexed early, which does no harm
+        if(!oldName.equals(item.getM_name())) {
+            m_sortedItems.insert(item);
+            m_searchIndex.add(item.getM_id(), item.getSearchKey());
+            m_version++;
+            for(ItemProviderListener listener : getListeners()) {
+                listener.itemRenamed(item.getM_id(), oldName, item.getM_name());
+            }
+        }
+        if(oldUnit != item.getM_unit()) {
+            for(ItemProviderListener listener : getListeners()) {
+                listener.unitChanged(item.getM_id(), oldUnit, item.getM_unit());
             }
-        };
-        Set<HashMap.Entry<Integer, Item>> entries = m_allItems.entrySet();
+        }
+    }
+
+    /**
+     * Has to be called by an item, whenever its critical
+     * or default value changed, to inform the listeners.
+     * Must be called while holding WRITE_LOCK.
+     * Items not registered with the ItemProvider are ignored.
+     * @param item the item that was changed
+     */
+    void onItemValuesChanged(Item item) {
+        if(m_allItems.get(item.getM_id()) != item) {
+            return;
+        }
+        markChanged(item.getM_id());
+        for(ItemProviderListener listener : getListeners()) {
+            listener.valuesChanged(item.getM_id());
+        }
+    }
+
+    /**
+     * Returns a copy of the registered listeners, so
+     * listeners can unregister while being informed.
+     */
+    private List<ItemProviderListener> getListeners() {
+        if(m_listeners.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(m_listeners);
+    }
+
+    /**
+     * Defers building the sorted and search index for items created
+     * from now on, until they are indexed by indexDeferredItems.
+     * Used before loading lots of items, so the items and lists can
+     * be used before all of them are in alphabetical order.
+     * @see #indexDeferredItems(int)
+     */
+    public void deferIndexing() {
+        WRITE_LOCK.lock();
+        try {
+            m_deferIndexing = true;
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
 
-        List<HashMap.Entry<Integer, Item>> listOfEntries = new ArrayList<>(entries);
+    /**
+     * Adds some of the deferred items to the sorted and search index.
+     * Once all of them are indexed, new items are indexed right away again.
+     * The lock is only held for the given number of items, so this can be
+     * called in a loop from a background thread, without blocking changes
+     * of the data for long.
+     * If the sorted index is still empty, like after loading, all deferred
+     * items are sorted without holding the lock and the sorted index is
+     * built from them in one go, only the search index is built step by step.
+     * @param maxCount the number of items to index at most
+     * @return true if all items are indexed, false if there are items left
+     */
+    public boolean indexDeferredItems(int maxCount) {
+        List<Item> pending = null;
+        int version = 0;
+        WRITE_LOCK.lock();
+        try {
+            if(m_sortedItems.size() == 0 && !m_unindexed.isEmpty()) {
+                pending = new ArrayList<>(m_unindexed);
+                version = m_version;
+            }
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+        SortedItemIndex.SortedItems sorted = pending == null ? null : SortedItemIndex.sort(pending);
 
-        Collections.sort(listOfEntries, valueComparator);
+        WRITE_LOCK.lock();
+        try {
+            // any item added, renamed or removed in between makes the sorting void
+            if(sorted != null && m_version == version && m_sortedItems.size() == 0) {
+                m_sortedItems.insertSorted(sorted);
+            }
+            for(int i = 0; i < maxCount && !m_unindexed.isEmpty(); i++) {
+                Item item = m_unindexed.poll();
+                // skip items removed in between
+                if(m_allItems.get(item.getM_id()) == item) {
+                    if(!m_sortedItems.contains(item.getM_id())) {
+                        m_sortedItems.insert(item);
+                    }
+                    m_searchIndex.add(item.getM_id(), item.getSearchKey());
+                }
+            }
+            if(m_unindexed.isEmpty()) {
+                m_deferIndexing = false;
+                return true;
+            }
+            return false;
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
 
-        m_allItems.clear();
-        for(HashMap.Entry<Integer, Item> entry : listOfEntries){
-            entry.getValue().setM_id(ItemProvider.getInstance().getNextId());
-            m_allItems.put(ItemProvider.getInstance().getNextId(), entry.getValue());
+    /**
+     * Indexes all deferred items, before the indices are used.
+     */
+    private void ensureIndexed() {
+        if(m_deferIndexing) {
+            indexDeferredItems(Integer.MAX_VALUE);
         }
     }
 
@@ -123,20 +475,19 @@ public class ItemProvider{
      * Returns the id of an item identified by name and unit.
      * If no item with the specified name and unit is existing
      * -1 will be returned.
+     * The lookup is done in the name index, so it does not depend
+     * on the number of items. It can be done from any thread without locking.
      * @param name name of the item to search
      * @param unit unit of the item to search
      * @return id of the item, or -1 if none is found
      */
     public int findExistingItem(String name, Item.UNIT unit) {
-        int id = -1;
-        for (java.util.Map.Entry<Integer, Item> integerItemEntry : m_allItems.entrySet()) {
-            Item tmp = (Item) ((HashMap.Entry) integerItemEntry).getValue();
-            if (tmp.getM_unit().equals(unit) && tmp.getM_name().equals(name)) {
-                id = tmp.getM_id();
-                break;
-            }
+        // names are stored normalized, so the name is looked up the same way
+        Item item = m_nameIndex.get(unit).get(Item.normalizeName(name));
+        if(item == null) {
+            return -1;
         }
-        return id;
+        return item.getM_id();
     }
 
     /**
@@ -147,42 +498,246 @@ public class ItemProvider{
      * @return an item identified by the given id, null if no item is available
      */
     public Item getItemById(int id) {
-        if(!m_allItems.containsKey(id)) {
-            return null;
-        }
         return m_allItems.get(id);
     }
 
     /**
-     * Will create a temporary list of items filtered by a string.
-     * This function will filter m_allItems by the item names. The
-     * comparison will be case insensitive. Items which names contain
-     * the filter text will be added to the resulting list.
+     * Will create a temporary list of item ids filtered by a string.
+     * This function will filter the items by their names. The
+     * comparison will be case and accent insensitive. Ids of items which names
+     * contain the filter text will be added to the resulting list.
+     * The list is in alphabetical order of the item names.
+     * While the user keeps typing, the last result is refined
+     * instead of searching all items again.
      * @param filter String specifying the filter
-     * @return a HashMap containing all Items, where the filter applies
+     * @return a List containing the ids of all Items, where the filter applies
+     * @see FilterSession
      */
-    public HashMap<Integer, Item> getAllItemsFiltered(String filter) {
+    public List<Integer> getAllItemsFiltered(String filter) {
         if(filter.isEmpty()){
-            return getAllItems();
-        }
-        HashMap<Integer,Item> filteredList = new HashMap<>();
-        for (HashMap.Entry<Integer,Item> entry : m_allItems.entrySet()) {
-            Item item = entry.getValue();
-            if(item != null) {
-                String name =  item.getM_name().toLowerCase();
-                if(name.contains(filter.toLowerCase())) {
-                    filteredList.put(entry.getKey(), entry.getValue());
-                }
-            }
+            return getSortedIds();
+        }
+        ensureIndexed();
+        int[] ids = m_filterSession.search(filter, null);
+
+        // order the matches by their position in the sorted index
+        long[] ranked = new long[ids.length];
+        for(int i = 0; i < ids.length; i++) {
+            ranked[i] = ((long) m_sortedItems.rank(ids[i]) << 32) | ids[i];
+        }
+        Arrays.sort(ranked);
+        List<Integer> filteredList = new ArrayList<>(ranked.length);
+        for(long entry : ranked) {
+            filteredList.add((int) entry);
         }
         return filteredList;
     }
 
-    public HashMap<Integer,Item> getAllItems() {
+    /**
+     * Searches the items, which names contain the filter text,
+     * using the search index. The comparison is case and accent insensitive.
+     * @param filter String specifying the filter
+     * @return the ids of the matching items in ascending order of the ids
+     */
+    public int[] findItemsContaining(String filter) {
+        return findItemsContainingFolded(Item.foldSearchKey(filter));
+    }
+
+    /**
+     * Like findItemsContaining, for a filter already folded by Item.foldSearchKey.
+     * @param folded the folded filter
+     * @return the ids of the matching items in ascending order of the ids
+     */
+    int[] findItemsContainingFolded(String folded) {
+        ensureIndexed();
+        return m_searchIndex.search(folded);
+    }
+
+    public Map<Integer,Item> getAllItems() {
         return m_allItems;
     }
 
-    int getNextId() {
-        return m_allItems.size();
+    /**
+     * Returns an immutable copy of all items and their amounts in the
+     * inventory and shopping list, which can be read from any thread.
+     * The snapshot is kept until the next change, so taking it again
+     * without changes in between does not copy anything.
+     * @return a consistent snapshot of the current data
+     */
+    public DataSnapshot getSnapshot() {
+        DataSnapshot snapshot = m_snapshot;
+        if(snapshot != null) {
+            return snapshot;
+        }
+        WRITE_LOCK.lock();
+        try {
+            ensureIndexed();
+            if(m_snapshot == null) {
+                ListProvider lists = ListProvider.getInstance();
+                m_snapshot = new DataSnapshot(m_sortedItems.getItemsInOrder(), m_sortedItems.size(),
+                        lists.getListById(ItemList.INVENTORY_LIST_ID),
+                        lists.getListById(ItemList.SHOPPING_LIST_ID),
+                        m_idAllocator.getNextId(), m_modificationCount);
+            }
+            return m_snapshot;
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Returns an immutable copy of the items changed after the given
+     * modification count and their amounts in the inventory and shopping
+     * list. Changes of the amounts count as changes of the item.
+     * The items are in the order they were changed, not alphabetical.
+     * Takes time depending on the number of changed items only.
+     * The modification count of the returned snapshot is the one to
+     * pass on the next call, to get the changes after this one.
+     * @param modificationCount the count to get the changes after,
+     *  0 for all items
+     * @return a snapshot of the changed items
+     */
+    public DataSnapshot getChangesSince(long modificationCount) {
+        WRITE_LOCK.lock();
+        try {
+            List<Item> items = m_changeLog.getChangedSince(modificationCount);
+            ListProvider lists = ListProvider.getInstance();
+            return new DataSnapshot(items, items.size(),
+                    lists.getListById(ItemList.INVENTORY_LIST_ID),
+                    lists.getListById(ItemList.SHOPPING_LIST_ID),
+                    m_idAllocator.getNextId(), m_modificationCount);
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Drops the current snapshot and increases the modification count,
+     * has to be called on every change of the data while holding WRITE_LOCK.
+     */
+    void markModified() {
+        m_snapshot = null;
+        m_modificationCount++;
+    }
+
+    /**
+     * Like markModified, also gives the item the new modification
+     * count as change version. Has to be called on every change
+     * of an item or its amount in a list while holding WRITE_LOCK.
+     * @param itemId id of the changed item, unknown ids are ignored
+     */
+    void markChanged(int itemId) {
+        markModified();
+        Item item = m_allItems.get(itemId);
+        if(item != null) {
+            item.setChangeVersion(m_modificationCount);
+            m_changeLog.add(item);
+        }
+    }
+
+    /**
+     * Returns a counter, which increases with every change of items or
+     * lists, including changes of item values and list amounts.
+     * Comparing it to the count at the time the data was saved
+     * tells, if there is anything left to save.
+     * This can be called from any thread.
+     * @return the current modification count
+     */
+    public long getModificationCount() {
+        return m_modificationCount;
+    }
+
+    /**
+     * Returns the ids of all items in alphabetical order
+     * of the item names.
+     * @return a new List containing the ids of all items
+     */
+    public List<Integer> getSortedIds() {
+        ensureIndexed();
+        List<Integer> ids = new ArrayList<>(m_sortedItems.size());
+        for(Item item : m_sortedItems.getItemsInOrder()) {
+            ids.add(item.getM_id());
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the id of the item at the given position
+     * of the alphabetical order.
+     * This is done in the sorted index in O(log n).
+     * @param position position in the alphabetical order
+     * @return the id of the item, -1 if the position is out of range
+     */
+    public int getIdAtPosition(int position) {
+        ensureIndexed();
+        Item item = m_sortedItems.get(position);
+        if(item == null) {
+            return -1;
+        }
+        return item.getM_id();
+    }
+
+    /**
+     * Returns the position of an item in the alphabetical order.
+     * This is done in the sorted index in O(log n).
+     * @param id id of the item
+     * @return the position of the item, -1 if there is no item with the id
+     */
+    public int getSortedPosition(int id) {
+        ensureIndexed();
+        return m_sortedItems.rank(id);
+    }
+
+    /**
+     * Returns a counter, which changes whenever items are added, renamed or cleared.
+     * Used to tell if results derived from the items are still valid.
+     * @return the current version of the items
+     */
+    int getVersion() {
+        return m_version;
+    }
+
+    /**
+     * Returns the id, which will be given to the next created item.
+     * Used to persist the state of the id allocator.
+     * @return the next item id
+     */
+    public int getNextId() {
+        return m_idAllocator.getNextId();
+    }
+
+    /**
+     * Makes sure no id below the given one will be handed
+     * out to newly created items. Used to restore the persisted
+     * state of the id allocator.
+     * @param nextId the lowest id, that might be handed out
+     */
+    public void reserveIdsBelow(int nextId) {
+        WRITE_LOCK.lock();
+        try {
+            m_idAllocator.advanceTo(nextId);
+            markModified();
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Makes sure the modification count does not go below the given one,
+     * so change versions handed out from now on are above all versions
+     * handed out before. Used to restore the persisted count after a
+     * restart, as the count starts over with every process.
+     * @param modificationCount the lowest count to continue from
+     */
+    public void restoreModificationCount(long modificationCount) {
+        WRITE_LOCK.lock();
+        try {
+            if(modificationCount > m_modificationCount) {
+                m_modificationCount = modificationCount;
+                m_snapshot = null;
+            }
+        } finally {
+            WRITE_LOCK.unlock();
+        }
     }
 }
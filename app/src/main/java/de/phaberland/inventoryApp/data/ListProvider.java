@@ -6,61 +6,164 @@
 
 package de.phaberland.inventoryApp.data;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.phaberland.inventoryApp.interfaces.ItemListListener;
+import de.phaberland.inventoryApp.interfaces.StockThresholdListener;
 
 /**
  * ListProvider is a singleton instance to be used the keep track
  * of all lists used in the application.
+ * It also adds items running out in the inventory to the
+ * shopping list, as reported by the StockThresholdEngine.
+ *
+ * ItemListListeners registered with the ListProvider are
+ * registered with every list, also the ones created by a later init.
+ *
+ * Like the ItemProvider, changes are done while holding its WRITE_LOCK,
+ * lists can be looked up by id from any thread.
  *
  * @author      Peter Haberland
  * @version     %I%, %G%
  */
 public class ListProvider {
-    private static ListProvider instance = null;
-    private HashMap<Integer,ItemList> m_allLists;
+    private final ConcurrentHashMap<Integer,ItemList> m_allLists = new ConcurrentHashMap<>();
+    private HashMap<Integer,FilterSession> m_filterSessions;
+    private final List<ItemListListener> m_listListeners = new ArrayList<>();
+
+    /**
+     * Adds items running out to the shopping list, if they are not on it yet.
+     * Restocked items stay on the shopping list, until the user removes them.
+     */
+    private final StockThresholdListener m_shoppingListener = new StockThresholdListener() {
+        @Override
+        public void crossedCritical(int itemId) {
+            ItemList shoppingList = getListById(ItemList.SHOPPING_LIST_ID);
+            Item item = ItemProvider.getInstance().getItemById(itemId);
+            if(shoppingList == null || item == null || shoppingList.hasItem(item)) {
+                return;
+            }
+            shoppingList.add(item, 0);
+        }
+
+        @Override
+        public void recovered(int itemId) {
+            // nothing to do, the item stays on the shopping list
+        }
+    };
+
+    /**
+     * Holds the instance, the class is loaded on first access
+     * to getInstance, which the class loader does thread safe.
+     */
+    private static class InstanceHolder {
+        static final ListProvider INSTANCE = new ListProvider();
+    }
 
     /**
      * standard singleton style getInstance.
+     * This is thread safe without locking.
      * @return the static instance of ListProvider
      */
     public static ListProvider getInstance() {
-        if(instance == null) {
-            instance = new ListProvider();
-        }
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
 
     /**
      * Initializes the internal list of lists.
      * Should always be called before using ListProvider.
-     * m_allItems will be set to an empty HashMap.
+     * m_allLists will be emptied.
      * The function will also add the two initial Lists,
      * that always need to be available,
      * which is Inventory list (id=0) and Shopping list (id=1)
+     * and attach the StockThresholdEngine to the inventory.
      */
     public void init() {
-        m_allLists = new HashMap<>();
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            m_allLists.clear();
+            m_filterSessions = new HashMap<>();
 
-        if(m_allLists.isEmpty()) {
-            addList(); // id = 0, we need to initialize a inventory list
-            addList(); // id = 1, we need to initialize a shopping list
+            if(m_allLists.isEmpty()) {
+                addList(); // id = 0, we need to initialize a inventory list
+                addList(); // id = 1, we need to initialize a shopping list
+            }
+            StockThresholdEngine.getInstance().attach(getListById(ItemList.INVENTORY_LIST_ID));
+            StockThresholdEngine.getInstance().addListener(m_shoppingListener);
+            ItemProvider.getInstance().markModified();
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
         }
     }
 
     /**
-     * clears all lists and initializes Inventory and
-     * Shopping list as empty lists.
+     * clears the content of all lists. The lists themselves
+     * are kept, so registered listeners stay registered.
      */
     public void clear() {
-        m_allLists.clear();
-        // we always want to have inventory and shopping list.
-        addList();
-        addList();
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            m_filterSessions.clear();
+            for(ItemList list : m_allLists.values()) {
+                list.clear();
+            }
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * clears the content of a single list.
+     * @param id id of the list to clear
+     */
+    public void clearList(int id) {
+        ItemList list = getListById(id);
+        if(list != null) {
+            list.clear();
+        }
     }
 
     private void addList() {
         ItemList list = new ItemList();
         m_allLists.put(list.getId(), list);
+        for(ItemListListener listener : m_listListeners) {
+            list.addListener(listener);
+        }
+    }
+
+    /**
+     * Registers a listener with all lists, including lists created later on.
+     * Registering the same listener twice has no effect.
+     * @param listener the listener to register
+     */
+    public void addListListener(ItemListListener listener) {
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            if(m_listListeners.contains(listener)) {
+                return;
+            }
+            m_listListeners.add(listener);
+            for(ItemList list : m_allLists.values()) {
+                list.addListener(listener);
+            }
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    public void removeListListener(ItemListListener listener) {
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            m_listListeners.remove(listener);
+            for(ItemList list : m_allLists.values()) {
+                list.removeListener(listener);
+            }
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
     }
 
     /**
@@ -71,12 +174,7 @@ public class ListProvider {
      * @return the list with the id or null if there is none
      */
     public ItemList getListById(int id) {
-        if(m_allLists.containsKey(id)) {
-            return m_allLists.get(id);
-        }
-        else {
-            return null;
-        }
+        return m_allLists.get(id);
     }
 
     /**
@@ -85,26 +183,34 @@ public class ListProvider {
      * item names. The comparison will be case insensitive.
      * Items which names contain the filter text will be added to
      * the resulting list.
+     * The matching items are taken from the search index of the
+     * ItemProvider and intersected with the content of the list.
+     * Every list has its own FilterSession, so while the user keeps
+     * typing the last result is refined instead of searching again.
      * @param id id of the list to filter
      * @param filter String specifying the filter
      * @return a temporary ItemList containing all Items, where the filter applies
+     * @see FilterSession
      */
     public ItemList getFilteredList(int id, String filter) {
         if(filter.isEmpty()) {
             return getListById(id);
         }
 
-        HashMap<Item, Integer> list = getListById(id).getM_content();
-        ItemList filteredList = new ItemList(true);
-        for (HashMap.Entry<Item, Integer> entry : list.entrySet()) {
-            Item item = entry.getKey();
-            if(item != null) {
-                String name =  item.getM_name().toLowerCase();
-                if(name.contains(filter.toLowerCase())) {
-                    filteredList.add(entry.getKey(), entry.getValue());
-                }
-            }
+        ItemList list = getListById(id);
+        FilterSession session = m_filterSessions.get(id);
+        if(session == null) {
+            session = new FilterSession();
+            m_filterSessions.put(id, session);
         }
+        int[] itemIds = session.search(filter, list);
+        int[] amounts = new int[itemIds.length];
+        for(int i = 0; i < itemIds.length; i++) {
+            amounts[i] = list.getAmountForId(itemIds[i]);
+        }
+        // the list is new, so it is filled without locking or informing anyone
+        ItemList filteredList = new ItemList(true);
+        filteredList.fill(itemIds, amounts, itemIds.length);
         return filteredList;
     }
 
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * NGramIndex is used to find items by a part of their name.
+ * For every trigram (three consecutive characters) of the search
+ * keys of the items a posting list with the ids of the items containing
+ * it is kept. A search intersects the posting lists of the
+ * trigrams of the filter, so only items sharing all trigrams with
+ * the filter need to be checked.
+ *
+ * Filters shorter than a trigram are answered by checking all names,
+ * as they will match a large part of the items anyway.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+class NGramIndex {
+    private static final int N = 3;
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Sorted list of item ids, which contain a certain trigram.
+     */
+    private static final class PostingList {
+        int[] ids = new int[4];
+        int size = 0;
+
+        void add(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if(pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if(size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if(pos < 0) {
+                return;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    private static final Comparator<PostingList> BY_SIZE = new Comparator<PostingList>() {
+        @Override
+        public int compare(PostingList p1, PostingList p2) {
+            return p1.size - p2.size;
+        }
+    };
+
+    private final HashMap<Long, PostingList> m_postings;
+    private final HashMap<Integer, String> m_names;
+
+    /**
+     * Constructs an empty index.
+     */
+    NGramIndex() {
+        m_postings = new HashMap<>();
+        m_names = new HashMap<>();
+    }
+
+    /**
+     * Adds an item to the index. If the item is already indexed
+     * with another name, the old name will be replaced.
+     * @param id id of the item
+     * @param folded the search key of the item
+     * @see Item#getSearchKey()
+     */
+    void add(int id, String folded) {
+        remove(id);
+        m_names.put(id, folded);
+        for(int i = 0; i + N <= folded.length(); i++) {
+            Long gram = gramAt(folded, i);
+            PostingList postings = m_postings.get(gram);
+            if(postings == null) {
+                postings = new PostingList();
+                m_postings.put(gram, postings);
+            }
+            postings.add(id);
+        }
+    }
+
+    /**
+     * Removes an item from the index.
+     * @param id id of the item to remove
+     */
+    void remove(int id) {
+        String folded = m_names.remove(id);
+        if(folded == null) {
+            return;
+        }
+        for(int i = 0; i + N <= folded.length(); i++) {
+            Long gram = gramAt(folded, i);
+            PostingList postings = m_postings.get(gram);
+            if(postings != null) {
+                postings.remove(id);
+                if(postings.size == 0) {
+                    m_postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all items from the index.
+     */
+    void clear() {
+        m_postings.clear();
+        m_names.clear();
+    }
+
+    /**
+     * Searches all items, which search keys contain the filter.
+     * @param folded the text to search for, folded like the search keys
+     * @return the ids of the matching items in ascending order
+     * @see Item#foldSearchKey(String)
+     */
+    int[] search(String folded) {
+        if(folded.length() < N) {
+            return scan(folded);
+        }
+
+        // collect the posting lists of all trigrams of the filter
+        List<PostingList> lists = new ArrayList<>();
+        for(int i = 0; i + N <= folded.length(); i++) {
+            PostingList postings = m_postings.get(gramAt(folded, i));
+            if(postings == null) {
+                // one trigram is not in any name, so nothing matches
+                return EMPTY;
+            }
+            if(!lists.contains(postings)) {
+                lists.add(postings);
+            }
+        }
+        Collections.sort(lists, BY_SIZE);
+
+        // intersect, starting with the smallest list, and verify the candidates,
+        // as sharing all trigrams does not mean the filter is contained
+        PostingList smallest = lists.get(0);
+        int[] result = new int[smallest.size];
+        int count = 0;
+        for(int i = 0; i < smallest.size; i++) {
+            int id = smallest.ids[i];
+            boolean inAll = true;
+            for(int l = 1; l < lists.size() && inAll; l++) {
+                inAll = lists.get(l).contains(id);
+            }
+            if(inAll && m_names.get(id).contains(folded)) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Checks all names for the filter, used for short filters.
+     * @param folded the folded filter
+     * @return the ids of the matching items in ascending order
+     */
+    private int[] scan(String folded) {
+        int[] result = new int[m_names.size()];
+        int count = 0;
+        for(HashMap.Entry<Integer, String> entry : m_names.entrySet()) {
+            if(entry.getValue().contains(folded)) {
+                result[count++] = entry.getKey();
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Packs the trigram starting at the given position into a single value.
+     */
+    private static Long gramAt(String text, int pos) {
+        return ((long) text.charAt(pos) << 32)
+                | ((long) text.charAt(pos + 1) << 16)
+                | (long) text.charAt(pos + 2);
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * SortedItemIndex keeps the items in alphabetical order.
+ * It is a balanced search tree (treap) ordered by the sort key
+ * of the item and its id, where every node knows the size of its subtree.
+ * This allows inserting, removing and renaming an item as well as
+ * accessing an item by its position and getting the position of
+ * an item in O(log n), without sorting all items again.
+ *
+ * Every node keeps the sort key the item had, when it was inserted,
+ * so an item needs to be removed and inserted again after renaming it.
+ *
+ * Lots of items inserted into an empty index at once, like after
+ * loading, are sorted once and the tree is built from the sorted
+ * items in O(n), instead of inserting them one by one. The items can
+ * be sorted before, without touching the index, see sort.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+class SortedItemIndex {
+    /**
+     * A node of the tree. The priority is derived from the id
+     * of the item, so the shape of the tree is deterministic.
+     */
+    private static final class Node {
+        final Item item;
+        final byte[] key;
+        final int priority;
+        int size;
+        Node left;
+        Node right;
+
+        Node(Item item) {
+            this.item = item;
+            this.key = item.getSortKey();
+            this.priority = priorityOf(item.getM_id());
+            this.size = 1;
+        }
+    }
+
+    private static final Comparator<Node> NODE_ORDER = new Comparator<Node>() {
+        @Override
+        public int compare(Node n1, Node n2) {
+            return SortedItemIndex.compare(n1, n2);
+        }
+    };
+
+    /**
+     * Items sorted for an empty index. Sorting does not touch the index,
+     * so it can be done without holding the write lock of the ItemProvider.
+     */
+    static final class SortedItems {
+        private final Node[] nodes;
+
+        private SortedItems(Node[] nodes) {
+            this.nodes = nodes;
+        }
+    }
+
+    private Node m_root;
+    private HashMap<Integer, Node> m_nodes;
+
+    /**
+     * Constructs an empty index.
+     */
+    SortedItemIndex() {
+        m_root = null;
+        m_nodes = new HashMap<>();
+    }
+
+    /**
+     * Inserts an item at its alphabetical position.
+     * If the item already is in the index, it will be moved
+     * to the position matching its current name.
+     * @param item the item to insert
+     */
+    void insert(Item item) {
+        remove(item.getM_id());
+        Node node = new Node(item);
+        m_nodes.put(item.getM_id(), node);
+        m_root = insert(m_root, node);
+    }
+
+    /**
+     * Inserts many items at once. If the index is empty, the items
+     * are sorted and the tree is built in a single pass, otherwise
+     * they are inserted one by one.
+     * @param items the items to insert, each item only once
+     */
+    void insertAll(List<Item> items) {
+        if(m_root != null) {
+            for(Item item : items) {
+                insert(item);
+            }
+            return;
+        }
+        insertSorted(sort(items));
+    }
+
+    /**
+     * Sorts items to be inserted into an empty index by insertSorted.
+     * The sort keys are taken now, so the names must not change until then.
+     * @param items the items to sort, each item only once
+     * @return the sorted items
+     */
+    static SortedItems sort(List<Item> items) {
+        Node[] nodes = new Node[items.size()];
+        for(int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(items.get(i));
+        }
+        Arrays.sort(nodes, NODE_ORDER);
+        return new SortedItems(nodes);
+    }
+
+    /**
+     * Builds the tree of an empty index from sorted items in a single pass.
+     * @param sorted the items returned by sort, used only once
+     * @throws IllegalStateException if the index is not empty
+     */
+    void insertSorted(SortedItems sorted) {
+        if(m_root != null) {
+            throw new IllegalStateException("index is not empty");
+        }
+        Node[] nodes = sorted.nodes;
+        m_nodes = new HashMap<>(Math.max(16, nodes.length * 4 / 3 + 1));
+        for(Node node : nodes) {
+            m_nodes.put(node.item.getM_id(), node);
+        }
+        m_root = build(nodes);
+    }
+
+    /**
+     * Removes the item with the given id from the index.
+     * @param id id of the item to remove
+     * @return true if the item was in the index, false otherwise
+     */
+    boolean remove(int id) {
+        Node node = m_nodes.remove(id);
+        if(node == null) {
+            return false;
+        }
+        m_root = remove(m_root, node);
+        return true;
+    }
+
+    /**
+     * Removes all items from the index.
+     */
+    void clear() {
+        m_root = null;
+        m_nodes.clear();
+    }
+
+    /**
+     * @param id id of the item
+     * @return true if the item is in the index
+     */
+    boolean contains(int id) {
+        return m_nodes.containsKey(id);
+    }
+
+    /**
+     * @return the number of items in the index
+     */
+    int size() {
+        return size(m_root);
+    }
+
+    /**
+     * Returns the item at the given position of the alphabetical order.
+     * @param position the position of the item
+     * @return the item at that position, null if the position is out of range
+     */
+    Item get(int position) {
+        if(position < 0 || position >= size()) {
+            return null;
+        }
+        Node current = m_root;
+        while(current != null) {
+            int leftSize = size(current.left);
+            if(position < leftSize) {
+                current = current.left;
+            } else if(position > leftSize) {
+                position -= leftSize + 1;
+                current = current.right;
+            } else {
+                return current.item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the position of an item in the alphabetical order.
+     * @param id id of the item
+     * @return the position of the item, -1 if it is not in the index
+     */
+    int rank(int id) {
+        Node node = m_nodes.get(id);
+        if(node == null) {
+            return -1;
+        }
+        int rank = 0;
+        Node current = m_root;
+        while(current != null) {
+            int result = compare(node, current);
+            if(result < 0) {
+                current = current.left;
+            } else if(result > 0) {
+                rank += size(current.left) + 1;
+                current = current.right;
+            } else {
+                return rank + size(current.left);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns all items in alphabetical order.
+     * @return a new list containing all items
+     */
+    List<Item> getItemsInOrder() {
+        List<Item> items = new ArrayList<>(size());
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        Node current = m_root;
+        while(current != null || !stack.isEmpty()) {
+            while(current != null) {
+                stack.push(current);
+                current = current.left;
+            }
+            current = stack.pop();
+            items.add(current.item);
+            current = current.right;
+        }
+        return items;
+    }
+
+    ////////////////////
+    // tree functions //
+    ////////////////////
+
+    private static Node insert(Node root, Node node) {
+        if(root == null) {
+            return node;
+        }
+        if(compare(node, root) < 0) {
+            root.left = insert(root.left, node);
+            if(root.left.priority > root.priority) {
+                root = rotateRight(root);
+            }
+        } else {
+            root.right = insert(root.right, node);
+            if(root.right.priority > root.priority) {
+                root = rotateLeft(root);
+            }
+        }
+        update(root);
+        return root;
+    }
+
+    /**
+     * Builds the tree from nodes in sorted order. The nodes are added
+     * from left to right along the right spine of the tree, which keeps
+     * the nodes with higher priority above the ones with lower priority.
+     * Every node is pushed and popped once, so this takes O(n).
+     */
+    private static Node build(Node[] sorted) {
+        ArrayDeque<Node> spine = new ArrayDeque<>();
+        for(Node node : sorted) {
+            Node last = null;
+            while(!spine.isEmpty() && spine.peek().priority < node.priority) {
+                last = spine.pop();
+                update(last);
+            }
+            node.left = last;
+            if(!spine.isEmpty()) {
+                spine.peek().right = node;
+            }
+            spine.push(node);
+        }
+        Node root = null;
+        while(!spine.isEmpty()) {
+            root = spine.pop();
+            update(root);
+        }
+        return root;
+    }
+
+    private static Node remove(Node root, Node node) {
+        if(root == null) {
+            return null;
+        }
+        if(root == node) {
+            return merge(root.left, root.right);
+        }
+        if(compare(node, root) < 0) {
+            root.left = remove(root.left, node);
+        } else {
+            root.right = remove(root.right, node);
+        }
+        update(root);
+        return root;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if(left == null) {
+            return right;
+        }
+        if(right == null) {
+            return left;
+        }
+        if(left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node newRoot = node.left;
+        node.left = newRoot.right;
+        newRoot.right = node;
+        update(node);
+        update(newRoot);
+        return newRoot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node newRoot = node.right;
+        node.right = newRoot.left;
+        newRoot.left = node;
+        update(node);
+        update(newRoot);
+        return newRoot;
+    }
+
+    private static void update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Compares two nodes by sort key and if the keys are equal by id.
+     */
+    private static int compare(Node n1, Node n2) {
+        int result = compareKeys(n1.key, n2.key);
+        if(result == 0) {
+            result = n1.item.getM_id() - n2.item.getM_id();
+        }
+        return result;
+    }
+
+    /**
+     * Compares two sort keys byte by byte, unsigned,
+     * a key being the start of the other one comes first.
+     */
+    private static int compareKeys(byte[] k1, byte[] k2) {
+        int length = Math.min(k1.length, k2.length);
+        for(int i = 0; i < length; i++) {
+            int result = (k1[i] & 0xFF) - (k2[i] & 0xFF);
+            if(result != 0) {
+                return result;
+            }
+        }
+        return k1.length - k2.length;
+    }
+
+    /**
+     * Scrambles the id, so consecutive ids get unrelated priorities.
+     */
+    private static int priorityOf(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+
+package de.phaberland.inventoryApp.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import de.phaberland.inventoryApp.interfaces.ItemListListener;
+import de.phaberland.inventoryApp.interfaces.ItemProviderListener;
+import de.phaberland.inventoryApp.interfaces.StockThresholdListener;
+
+/**
+ * StockThresholdEngine is a singleton instance keeping track of
+ * the items in the inventory running out.
+ * It listens to changed amounts in the inventory list
+ * and changed critical values of items. For every item in the
+ * inventory it keeps the headroom, which is the amount above the
+ * critical value, in a sorted set, so the items running out are
+ * always at its start.
+ *
+ * When an item reaches its critical value or is restocked above it,
+ * the registered listeners are informed. Only changes of the state
+ * are reported, so listeners do not need to check anything themselves.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ * @see StockThresholdListener
+ */
+public class StockThresholdEngine {
+    // headroom and item id packed into one value, ordered by headroom first
+    private final TreeSet<Long> m_byHeadroom;
+    private final IntIntMap m_amounts;
+    private final IntIntMap m_headrooms;
+    private final List<StockThresholdListener> m_listeners;
+    // while true, the items are tracked, but the listeners are not informed
+    private boolean m_muted = false;
+
+    /**
+     * Holds the instance, the class is loaded on first access
+     * to getInstance, which the class loader does thread safe.
+     */
+    private static class InstanceHolder {
+        static final StockThresholdEngine INSTANCE = new StockThresholdEngine();
+    }
+
+    /**
+     * standard singleton style getInstance.
+     * This is thread safe without locking.
+     * @return the static instance of StockThresholdEngine
+     */
+    public static StockThresholdEngine getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private StockThresholdEngine() {
+        m_byHeadroom = new TreeSet<>();
+        m_amounts = new IntIntMap();
+        m_headrooms = new IntIntMap();
+        m_listeners = new ArrayList<>();
+    }
+
+    /**
+     * Forgets about all tracked items.
+     * Registered listeners are kept.
+     */
+    void clear() {
+        m_byHeadroom.clear();
+        m_amounts.clear();
+        m_headrooms.clear();
+    }
+
+    /**
+     * Registers a listener. Registering the same listener
+     * twice has no effect.
+     * @param listener the listener to inform about state changes
+     */
+    public void addListener(StockThresholdListener listener) {
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            if(!m_listeners.contains(listener)) {
+                m_listeners.add(listener);
+            }
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    public void removeListener(StockThresholdListener listener) {
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            m_listeners.remove(listener);
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Registers the engine with the inventory list and the ItemProvider
+     * and starts tracking the items in the inventory.
+     * Should be called, whenever a new inventory list was created.
+     * @param inventory the inventory list to watch
+     */
+    void attach(ItemList inventory) {
+        clear();
+        IntIntMap.Cursor cursor = inventory.getContentCursor();
+        while(cursor.moveToNext()) {
+            Item item = ItemProvider.getInstance().getItemById(cursor.getKey());
+            if(item != null && cursor.getValue() > 0) {
+                track(item.getM_id(), cursor.getValue(), item.getM_critValue());
+            }
+        }
+        inventory.addListener(m_inventoryListener);
+        ItemProvider.getInstance().addListener(m_itemListener);
+    }
+
+    /**
+     * Tracks all items of the inventory again, after it was loaded in bulk
+     * without informing the listeners of the list. Every item running out
+     * is reported once, like it would have been when adding the items one
+     * by one. Must be called while holding the write lock of the ItemProvider.
+     * @param inventory the inventory list, which was loaded
+     * @see BulkLoad
+     */
+    void reload(ItemList inventory) {
+        clear();
+        m_amounts.ensureCapacity(inventory.size());
+        m_headrooms.ensureCapacity(inventory.size());
+        int[] runningOut = new int[inventory.size()];
+        int count = 0;
+        IntIntMap.Cursor cursor = inventory.getContentCursor();
+        while(cursor.moveToNext()) {
+            Item item = ItemProvider.getInstance().getItemById(cursor.getKey());
+            if(item == null) {
+                continue;
+            }
+            if(cursor.getValue() > 0) {
+                track(item.getM_id(), cursor.getValue(), item.getM_critValue());
+            }
+            if(cursor.getValue() <= 0 || isTrackedCritical(item.getM_id())) {
+                runningOut[count++] = item.getM_id();
+            }
+        }
+        // the listeners might change the shopping list, not while walking the inventory
+        for(int i = 0; i < count; i++) {
+            fireCrossedCritical(runningOut[i]);
+        }
+    }
+
+    /**
+     * Stops or resumes informing the listeners. While muted, the items are
+     * still tracked, so the state is right once the listeners are informed again.
+     * Used while merging a load, which holds the shopping amounts to end up with.
+     * Must be called while holding the write lock of the ItemProvider.
+     * @param muted true to stop informing the listeners, false to resume
+     */
+    void setMuted(boolean muted) {
+        m_muted = muted;
+    }
+
+    ////////////////////
+    // change entries //
+    ////////////////////
+
+    private final ItemListListener m_inventoryListener = new ItemListListener() {
+        @Override
+        public void itemAdded(int listId, int itemId, int amount) {
+            evaluateAmount(itemId, amount);
+        }
+
+        @Override
+        public void itemRemoved(int listId, int itemId, int oldAmount) {
+            evaluateAmount(itemId, 0);
+        }
+
+        @Override
+        public void amountChanged(int listId, int itemId, int oldAmount, int newAmount) {
+            evaluateAmount(itemId, newAmount);
+        }
+
+        @Override
+        public void listCleared(int listId) {
+            clear();
+        }
+    };
+
+    private final ItemProviderListener m_itemListener = new ItemProviderListener() {
+        @Override
+        public void itemAdded(int itemId) { }
+
+        @Override
+        public void itemRenamed(int itemId, String oldName, String newName) { }
+
+        @Override
+        public void unitChanged(int itemId, Item.UNIT oldUnit, Item.UNIT newUnit) { }
+
+        @Override
+        public void valuesChanged(int itemId) {
+            evaluateCritValue(itemId);
+        }
+
+        @Override
+        public void itemsCleared() { }
+
+        @Override
+        public void itemsReloaded() { }
+    };
+
+    /**
+     * Evaluates an item again after its amount in the inventory
+     * changed. An amount of 0 or less means the item was removed
+     * from the inventory, it will be reported as running out
+     * and is not tracked anymore.
+     * @param id id of the item which amount changed
+     * @param newAmount the new amount of the item in the inventory
+     */
+    private void evaluateAmount(int id, int newAmount) {
+        boolean wasCritical = isTrackedCritical(id);
+        boolean wasTracked = m_headrooms.containsKey(id);
+        untrack(id);
+
+        if(newAmount <= 0) {
+            if(!wasTracked || !wasCritical) {
+                fireCrossedCritical(id);
+            }
+            return;
+        }
+
+        Item item = ItemProvider.getInstance().getItemById(id);
+        if(item == null) {
+            return;
+        }
+        track(id, newAmount, item.getM_critValue());
+        boolean isCritical = isTrackedCritical(id);
+        if(isCritical && (!wasTracked || !wasCritical)) {
+            fireCrossedCritical(id);
+        } else if(!isCritical && wasTracked && wasCritical) {
+            fireRecovered(id);
+        }
+    }
+
+    /**
+     * Evaluates an item again after its critical value changed.
+     * Items not in the inventory are ignored.
+     * @param id id of the item which critical value changed
+     */
+    private void evaluateCritValue(int id) {
+        Item item = ItemProvider.getInstance().getItemById(id);
+        if(item == null || !m_headrooms.containsKey(id)) {
+            return;
+        }
+        boolean wasCritical = isTrackedCritical(id);
+        int amount = m_amounts.get(id, 0);
+        untrack(id);
+        track(id, amount, item.getM_critValue());
+        boolean isCritical = isTrackedCritical(id);
+        if(isCritical && !wasCritical) {
+            fireCrossedCritical(id);
+        } else if(!isCritical && wasCritical) {
+            fireRecovered(id);
+        }
+    }
+
+    /////////////
+    // GETTERS //
+    /////////////
+
+    /**
+     * Returns the ids of all items in the inventory, which are
+     * at or below their critical value, the ones furthest below first.
+     * Only the items running out are visited.
+     * The state is only changed while holding the write lock
+     * of the ItemProvider, so it is held while reading as well.
+     * @return ids of the items running out
+     */
+    public int[] getCriticalItems() {
+        ItemProvider.WRITE_LOCK.lock();
+        try {
+            int[] ids = new int[m_headrooms.size()];
+            int count = 0;
+            for(long entry : m_byHeadroom.headSet(pack(0, Integer.MAX_VALUE), true)) {
+                ids[count++] = (int) entry;
+            }
+            return Arrays.copyOf(ids, count);
+        } finally {
+            ItemProvider.WRITE_LOCK.unlock();
+        }
+    }
+
+    //////////////
+    // internal //
+    //////////////
+
+    private void track(int id, int amount, int critValue) {
+        int headroom = amount - critValue;
+        m_amounts.put(id, amount);
+        m_headrooms.put(id, headroom);
+        m_byHeadroom.add(pack(headroom, id));
+    }
+
+    private void untrack(int id) {
+        if(m_headrooms.containsKey(id)) {
+            m_byHeadroom.remove(pack(m_headrooms.remove(id, 0), id));
+            m_amounts.remove(id, 0);
+        }
+    }
+
+    private boolean isTrackedCritical(int id) {
+        return m_headrooms.containsKey(id) && m_headrooms.get(id, 0) <= 0;
+    }
+
+    private void fireCrossedCritical(int id) {
+        if(m_muted) {
+            return;
+        }
+        for(StockThresholdListener listener : new ArrayList<>(m_listeners)) {
+            listener.crossedCritical(id);
+        }
+    }
+
+    private void fireRecovered(int id) {
+        if(m_muted) {
+            return;
+        }
+        for(StockThresholdListener listener : new ArrayList<>(m_listeners)) {
+            listener.recovered(id);
+        }
+    }
+
+    private static long pack(int headroom, int id) {
+        return ((long) headroom << 32) | id;
+    }
+}
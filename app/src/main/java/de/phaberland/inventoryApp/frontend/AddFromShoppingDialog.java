@@ -33,20 +33,17 @@ import de.phaberland.inventoryApp.data.ListProvider;
 public class AddFromShoppingDialog extends DialogFragment {
     private final int m_itemId;
     private EditText m_text;
-    private final MainScreen m_callback;
 
     /////////////////////
     // dialog creation //
     /////////////////////
 
     /**
-     * Constructor setting up callback and item id
-     * @param callback callback where update will be called
+     * Constructor setting up the item id
      * @param id id of the item, to add to inventory
      */
-    public AddFromShoppingDialog(MainScreen callback, int id) {
+    public AddFromShoppingDialog(int id) {
         m_itemId = id;
-        m_callback = callback;
     }
 
     /**
@@ -89,7 +86,6 @@ public class AddFromShoppingDialog extends DialogFragment {
      * Handles the positiv button press. The defined item will
      * be added with the chosen amount to the inventory list
      * and will be removed from the shopping list.
-     * Afterwards update will be called on the callback.
      */
     private void handlePositiveButton() {
         ItemList list = ListProvider.getInstance().getListById(ItemList.INVENTORY_LIST_ID);
@@ -99,8 +95,6 @@ public class AddFromShoppingDialog extends DialogFragment {
         if(list.hasItem(ItemProvider.getInstance().getItemById(m_itemId))) {
             list.remove(m_itemId);
         }
-
-        m_callback.update();
     }
 
     ///////////////////
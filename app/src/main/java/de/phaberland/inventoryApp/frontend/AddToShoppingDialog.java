@@ -19,7 +19,6 @@ import androidx.annotation.NonNull;
 import androidx.fragment.app.DialogFragment;
 import androidx.fragment.app.FragmentActivity;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import de.phaberland.inventoryApp.app.ItemListAdapter;
@@ -36,7 +35,7 @@ import de.phaberland.inventoryApp.R;
  * @version     %I%, %G%
  */
 public class AddToShoppingDialog extends DialogFragment implements CreateItemDialogCallback {
-    private int m_itemId = 0;
+    private int m_itemId;
     private final MainScreen m_callback;
 
     private ListView m_itemList;
@@ -44,6 +43,8 @@ public class AddToShoppingDialog extends DialogFragment implements CreateItemDia
 
     AddToShoppingDialog(MainScreen callback) {
         m_callback = callback;
+        // the first item in the list is selected initially
+        m_itemId = ItemProvider.getInstance().getIdAtPosition(0);
     }
 
     /**
@@ -131,13 +132,14 @@ public class AddToShoppingDialog extends DialogFragment implements CreateItemDia
      */
     @Override
     public void update(int newItemId) {
-        List<Integer> list = new ArrayList<>(ItemProvider.getInstance().getAllItems().keySet());
+        List<Integer> list = ItemProvider.getInstance().getSortedIds();
         ItemListAdapter adapter = new ItemListAdapter(m_callback,
                 android.R.layout.simple_list_item_1, android.R.id.text1, list);
-        adapter.setSelectedItem(newItemId);
+        int position = ItemProvider.getInstance().getSortedPosition(newItemId);
+        adapter.setSelectedItem(position);
         m_itemList.setAdapter(adapter);
         m_itemId = newItemId;
-        m_itemList.setSelection(newItemId);
+        m_itemList.setSelection(position);
     }
 
 }
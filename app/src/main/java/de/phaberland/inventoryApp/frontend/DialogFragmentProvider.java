@@ -26,7 +26,6 @@ import android.widget.TextView;
 
 import androidx.fragment.app.FragmentActivity;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
@@ -237,7 +236,7 @@ public class DialogFragmentProvider {
 
             @Override
             public void afterTextChanged(Editable s) {
-                List<Integer> list = new ArrayList<>(ItemProvider.getInstance().getAllItemsFiltered(s.toString()).keySet());
+                List<Integer> list = ItemProvider.getInstance().getAllItemsFiltered(s.toString());
                 if(controls.adapter != null) {
                     controls.adapter = new ItemListAdapter(activity,
                             android.R.layout.simple_list_item_1, android.R.id.text1, list);
@@ -248,7 +247,7 @@ public class DialogFragmentProvider {
         itemSelector.addView(filter);
 
         // item selector
-        List<Integer> list = new ArrayList<>(ItemProvider.getInstance().getAllItems().keySet());
+        List<Integer> list = ItemProvider.getInstance().getSortedIds();
         controls.adapter = new ItemListAdapter(activity,
                 android.R.layout.simple_list_item_1, android.R.id.text1, list);
 
@@ -18,7 +18,6 @@ import androidx.annotation.NonNull;
 import androidx.fragment.app.DialogFragment;
 import androidx.fragment.app.FragmentActivity;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
@@ -153,10 +152,6 @@ public class EditItemDialog extends DialogFragment implements YesNoCallback, Cre
             int crit = Integer.parseInt(txt);
             item.setM_critValue(crit);
         }
-
-        if(m_callback != null) {
-            m_callback.update();
-        }
     }
 
     /**
@@ -181,13 +176,14 @@ public class EditItemDialog extends DialogFragment implements YesNoCallback, Cre
      */
     @Override
     public void update(int newItemId) {
-        List<Integer> list = new ArrayList<>(ItemProvider.getInstance().getAllItems().keySet());
+        List<Integer> list = ItemProvider.getInstance().getSortedIds();
         ItemListAdapter adapter = new ItemListAdapter(m_callback,
                 android.R.layout.simple_list_item_1, android.R.id.text1, list);
-        adapter.setSelectedItem(newItemId);
+        int position = ItemProvider.getInstance().getSortedPosition(newItemId);
+        adapter.setSelectedItem(position);
         m_itemControls.listView.setAdapter(adapter);
         m_itemId = newItemId;
-        m_itemControls.listView.setSelection(newItemId);
+        m_itemControls.listView.setSelection(position);
         setItemEdit();
     }
 
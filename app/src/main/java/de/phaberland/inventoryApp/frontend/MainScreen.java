@@ -36,10 +36,16 @@ import java.util.Locale;
 import de.phaberland.inventoryApp.R;
 import de.phaberland.inventoryApp.app.EventHandler;
 import de.phaberland.inventoryApp.app.InventoryApp;
+import de.phaberland.inventoryApp.app.StorageBackend;
+import de.phaberland.inventoryApp.data.IntIntMap;
 import de.phaberland.inventoryApp.data.Item;
 import de.phaberland.inventoryApp.data.ItemList;
 import de.phaberland.inventoryApp.data.ItemProvider;
 import de.phaberland.inventoryApp.data.ListProvider;
+import de.phaberland.inventoryApp.interfaces.ItemListListener;
+import de.phaberland.inventoryApp.interfaces.ItemProviderListener;
+import de.phaberland.inventoryApp.interfaces.LoadCallback;
+import de.phaberland.inventoryApp.interfaces.StorageCallback;
 
 /**
  * MainScreen is the main Frontend class.
@@ -47,6 +53,15 @@ import de.phaberland.inventoryApp.data.ListProvider;
  * creates the main layout and provides its
  * functionality, calling the needed dialogs.
  *
+ * The shown table is kept up to date by listening to the
+ * lists and items. Changes of a single item only replace
+ * its row, while items being added or removed cause one
+ * rebuild of the table, once the current event is handled.
+ *
+ * The data is loaded in the background, when the process starts,
+ * until the lists are loaded a loading message is shown instead of
+ * the table.
+ *
  * @author      Peter Haberland
  * @version     %I%, %G%
  */
@@ -59,6 +74,77 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
     private AddToShoppingDialog m_addToShopDlg;
     private EditItemDialog m_editItemDlg;
 
+    private TableLayout m_table;
+    private final HashMap<Integer, TableRow> m_rows = new HashMap<>();
+    private boolean m_rebuildPending = false;
+    private boolean m_loaded = false;
+    private boolean m_started = false;
+
+    private final ItemListListener m_listListener = new ItemListListener() {
+        @Override
+        public void itemAdded(int listId, int itemId, int amount) {
+            if(listId == m_app.getActiveList()) {
+                scheduleRebuild();
+            }
+        }
+
+        @Override
+        public void itemRemoved(int listId, int itemId, int oldAmount) {
+            if(listId == m_app.getActiveList()) {
+                scheduleRebuild();
+            }
+        }
+
+        @Override
+        public void amountChanged(int listId, int itemId, int oldAmount, int newAmount) {
+            if(listId == m_app.getActiveList()) {
+                refreshRow(itemId);
+            }
+        }
+
+        @Override
+        public void listCleared(int listId) {
+            if(listId == m_app.getActiveList()) {
+                scheduleRebuild();
+            }
+        }
+    };
+
+    private final ItemProviderListener m_itemListener = new ItemProviderListener() {
+        @Override
+        public void itemAdded(int itemId) { }
+
+        @Override
+        public void itemRenamed(int itemId, String oldName, String newName) {
+            // a new name might not match the filter anymore
+            if(m_filter.isEmpty()) {
+                refreshRow(itemId);
+            } else {
+                scheduleRebuild();
+            }
+        }
+
+        @Override
+        public void unitChanged(int itemId, Item.UNIT oldUnit, Item.UNIT newUnit) {
+            refreshRow(itemId);
+        }
+
+        @Override
+        public void valuesChanged(int itemId) {
+            refreshRow(itemId);
+        }
+
+        @Override
+        public void itemsCleared() {
+            scheduleRebuild();
+        }
+
+        @Override
+        public void itemsReloaded() {
+            scheduleRebuild();
+        }
+    };
+
     ////////////////////////
     // Activity Lifecycle //
     ////////////////////////
@@ -90,7 +176,9 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
             @Override
             public void afterTextChanged(Editable s) {
                 m_filter = s.toString();
-                updateList();
+                if(m_loaded) {
+                    updateList();
+                }
             }
         });
     }
@@ -124,28 +212,52 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
 
     /**
      * initializes members of the MainScreen. Calls
-     * init from InventoryApp and sets up button
-     * states and layouts.
+     * init from InventoryApp, which waits for the data
+     * loaded in the background once per process, and shows
+     * a loading message until the lists are loaded.
+     * When the activity is started again, the data is still
+     * in memory and the list is shown right away.
+     * @see InventoryApp#init(LoadCallback)
+     * @see #listsLoaded()
+     */
+    private void init() {
+        // initialize members
+        m_list = findViewById(R.id.mainTable);
+        m_filter = "";
+        m_loaded = false;
+        m_started = true;
+        showLoading();
+
+        // initialize main app
+        final InventoryApp app = new InventoryApp(this);
+        m_app = app;
+        m_app.init(new LoadCallback() {
+            @Override
+            public void listsLoaded() {
+                // ignore loading of an earlier start or after being stopped
+                if(app == m_app && m_started) {
+                    MainScreen.this.listsLoaded();
+                }
+            }
+        });
+    }
+
+    /**
+     * sets up button states and layouts, once
+     * the lists are loaded and shows the active list.
      * If no items are specified yet it will also
      * load some predefined items.
-     * @see InventoryApp#init()
      * @see #setUpInitialButtons()
      * @see #prepareInitialItems()
      */
-    private void init() {
-        // initialize main app
-        m_app = new InventoryApp(this);
-        m_app.init();
+    private void listsLoaded() {
+        m_loaded = true;
 
         // possibly load initial item list
         if(ItemProvider.getInstance().getAllItems().isEmpty()) {
             prepareInitialItems();
         }
 
-        // initialize members
-        m_list = findViewById(R.id.mainTable);
-        m_filter = "";
-
         // set this as onClickListeners
         Button button = findViewById(R.id.addItemButton);
         button.setOnClickListener(this);
@@ -155,10 +267,24 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
         //set up initial buttons
         setUpInitialButtons();
 
+        // keep the table up to date
+        ListProvider.getInstance().addListListener(m_listListener);
+        ItemProvider.getInstance().addListener(m_itemListener);
+
         // show initial list
         updateList();
     }
 
+    /**
+     * shows a loading message instead of the table.
+     */
+    private void showLoading() {
+        m_list.removeAllViews();
+        m_table = null;
+        m_rows.clear();
+        m_list.addView(createTextField(getString(R.string.label_loading)));
+    }
+
     /**
      * reads from the InventoryApp, which button currently
      * is active and sets inventory and shopping buttons
@@ -202,16 +328,20 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
                 case "1": unit = Item.UNIT.MILILITER; break;
                 default: unit = Item.UNIT.PIECE; break;
             }
-            ItemProvider.getInstance().addItem(itemName, unit, false);
+            ItemProvider.getInstance().addItem(itemName, unit);
         }
-        ItemProvider.getInstance().sortItems();
     }
 
     /**
+     * stops listening to changes and
      * calls deinit from InventoryApp
      * @see InventoryApp#deinit()
      */
     private void deinit() {
+        m_loaded = false;
+        m_started = false;
+        ListProvider.getInstance().removeListListener(m_listListener);
+        ItemProvider.getInstance().removeListener(m_itemListener);
         m_app.deinit();
     }
 
@@ -241,6 +371,7 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
      * handles a press of the Settings button.
      * This will call a create dialog containing
      *  - import/export options
+     *  - storage options
      *  - edit menu
      *  - impressum
      */
@@ -254,6 +385,9 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
         // export import
         addExportImport(layout);
 
+        // storage
+        addStorage(layout);
+
         // edit
         addEdit(layout);
 
@@ -288,8 +422,9 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
 
     /**
      * Will add a label for import and export
-     * and buttons to export or import the
-     * application data and setting up the user
+     * and buttons to export, import or merge the
+     * application data or the changes since the
+     * last export and setting up the user
      * feedback.
      * @param layout the layout to which to add it
      */
@@ -313,6 +448,22 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
         });
         layout.addView(exportToDownloadButton);
 
+        View exportCompressedButton =  createButton(getString(R.string.button_export_compressed));
+        exportCompressedButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if(!m_app.checkPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE)) {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_requesting_permission)),Toast.LENGTH_SHORT).show();
+                }
+                if(m_app.exportCompressedCsv()) {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_exported_success)),Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_exported_fail)),Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        layout.addView(exportCompressedButton);
+
         View importFromDownloadButton =  createButton(getString(R.string.button_import_from_download));
         importFromDownloadButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -321,7 +472,6 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
                     Toast.makeText(getApplicationContext(), (getString(R.string.toast_requesting_permission)),Toast.LENGTH_SHORT).show();
                 }
                 if(m_app.importCsv()) {
-                    updateList();
                     Toast.makeText(getApplicationContext(), (getString(R.string.toast_import_success)),Toast.LENGTH_SHORT).show();
                 } else {
                     Toast.makeText(getApplicationContext(), (getString(R.string.toast_imported_fail)),Toast.LENGTH_SHORT).show();
@@ -329,6 +479,95 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
             }
         });
         layout.addView(importFromDownloadButton);
+
+        View mergeFromDownloadButton =  createButton(getString(R.string.button_merge_from_download));
+        mergeFromDownloadButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if(!m_app.checkPermission(Manifest.permission.READ_EXTERNAL_STORAGE)) {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_requesting_permission)),Toast.LENGTH_SHORT).show();
+                }
+                if(m_app.mergeCsv()) {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_merge_success)),Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_merge_fail)),Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        layout.addView(mergeFromDownloadButton);
+
+        View exportChangesButton =  createButton(getString(R.string.button_export_changes));
+        exportChangesButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if(!m_app.checkPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE)) {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_requesting_permission)),Toast.LENGTH_SHORT).show();
+                }
+                if(m_app.exportChanges()) {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_export_changes_success)),Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_export_changes_fail)),Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        layout.addView(exportChangesButton);
+
+        View importChangesButton =  createButton(getString(R.string.button_import_changes));
+        importChangesButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if(!m_app.checkPermission(Manifest.permission.READ_EXTERNAL_STORAGE)) {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_requesting_permission)),Toast.LENGTH_SHORT).show();
+                }
+                if(m_app.importChanges()) {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_import_changes_success)),Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplicationContext(), (getString(R.string.toast_import_changes_fail)),Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        layout.addView(importChangesButton);
+    }
+
+    /**
+     * Will add a label for the storage and a button
+     * for every StorageBackend, to choose how the
+     * application data is stored.
+     * @param layout the layout to which to add it
+     */
+    private void addStorage(LinearLayout layout) {
+        View storageLabel = createTextField(getString(R.string.label_storage));
+        layout.addView(storageLabel);
+
+        addStorageButton(layout, R.string.button_storage_binary, StorageBackend.BINARY);
+        addStorageButton(layout, R.string.button_storage_sqlite, StorageBackend.SQLITE);
+        addStorageButton(layout, R.string.button_storage_csv, StorageBackend.CSV);
+    }
+
+    /**
+     * Adds a button choosing a StorageBackend.
+     * @param layout the layout to which to add it
+     * @param text resource id of the button text
+     * @param backend name of the backend
+     */
+    private void addStorageButton(LinearLayout layout, int text, final String backend) {
+        View storageButton = createButton(getString(text));
+        storageButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                m_app.setStorageBackend(backend, new StorageCallback() {
+                    @Override
+                    public void storageChanged(boolean success) {
+                        if(success) {
+                            Toast.makeText(getApplicationContext(), (getString(R.string.toast_storage_changed)),Toast.LENGTH_SHORT).show();
+                        } else {
+                            Toast.makeText(getApplicationContext(), (getString(R.string.toast_storage_failed)),Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+            }
+        });
+        layout.addView(storageButton);
     }
 
     /**
@@ -359,7 +598,7 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
      * and the active list will be set to Inventory
      */
     private void inventoryButtonPressed() {
-        if(m_app.getActiveList() != ItemList.INVENTORY_LIST_ID) {
+        if(m_loaded && m_app.getActiveList() != ItemList.INVENTORY_LIST_ID) {
             // activate inventory button
             Button button = findViewById(R.id.inventoryButton);
             button.setBackgroundColor(ContextCompat.getColor(this, R.color.colorAccent));
@@ -383,7 +622,7 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
      * and the active list will be set to Shopping
      */
     private void shoppingButtonPressed() {
-        if(m_app.getActiveList() != ItemList.SHOPPING_LIST_ID) {
+        if(m_loaded && m_app.getActiveList() != ItemList.SHOPPING_LIST_ID) {
             // activate shopping button
             Button button = findViewById(R.id.shoppingButton);
             button.setBackgroundColor(ContextCompat.getColor(this, R.color.colorAccent));
@@ -496,16 +735,62 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
     private void updateList() {
         ItemList listToDisplay = ListProvider.getInstance().getFilteredList(m_app.getActiveList(), m_filter);
         m_list.removeAllViews();
+        m_table = null;
+        m_rows.clear();
 
         addSwipeListener(m_list);
 
-        if(listToDisplay == null || listToDisplay.getM_content().isEmpty()) {
+        if(listToDisplay == null || listToDisplay.isEmpty()) {
             return;
         }
 
         createTable(listToDisplay);
     }
 
+    /**
+     * Replaces the row of a single item with a new one,
+     * showing the current values of the item.
+     * Items not shown in the table are ignored.
+     * @param itemId id of the item to show again
+     */
+    private void refreshRow(int itemId) {
+        TableRow oldRow = m_rows.get(itemId);
+        Item item = ItemProvider.getInstance().getItemById(itemId);
+        if(oldRow == null || m_table == null || item == null) {
+            return;
+        }
+        int index = m_table.indexOfChild(oldRow);
+        if(index < 0) {
+            return;
+        }
+        TableRow tr = createEntry(item, ListProvider.getInstance()
+                .getListById(m_app.getActiveList()).getAmountForId(itemId));
+        m_table.removeViewAt(index);
+        m_table.addView(tr, index);
+        addSwipeListener(tr);
+        m_rows.put(itemId, tr);
+    }
+
+    /**
+     * Rebuilds the whole table after the current event was handled.
+     * Multiple requests until then only cause a single rebuild,
+     * like importing lots of items at once.
+     * @see #updateList()
+     */
+    private void scheduleRebuild() {
+        if(m_rebuildPending || m_list == null) {
+            return;
+        }
+        m_rebuildPending = true;
+        m_list.post(new Runnable() {
+            @Override
+            public void run() {
+                m_rebuildPending = false;
+                updateList();
+            }
+        });
+    }
+
     /**
      * creates a table displaying the provided list.
      * depending on the active list, for each entry
@@ -527,23 +812,38 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
 
         table.setStretchAllColumns(true);
 
-        for (HashMap.Entry<Item, Integer> entry : listToDisplay.getM_content().entrySet()) {
-            TableRow tr = null;
-
-            switch(m_app.getActiveList()) {
-                case 0:
-                    tr = createInventoryEntry( entry.getKey(),entry.getValue());
-                    break;
-                case 1:
-                    tr = createShoppingEntry( entry.getKey());
-                    break;
-                default:
-                    break;
+        IntIntMap.Cursor cursor = listToDisplay.getContentCursor();
+        while (cursor.moveToNext()) {
+            Item item = ItemProvider.getInstance().getItemById(cursor.getKey());
+            if(item == null) {
+                continue;
             }
+            TableRow tr = createEntry(item, cursor.getValue());
             table.addView(tr);
             addSwipeListener(tr);
+            m_rows.put(item.getM_id(), tr);
         }
         m_list.addView(table);
+        m_table = table;
+    }
+
+    /**
+     * creates the row for an item depending on the active list.
+     * @param item the item to display in the table entry
+     * @param amount amount of the item in the active list
+     * @return a TableRow containing the entry information
+     * @see #createInventoryEntry(Item, int)
+     * @see #createShoppingEntry(Item)
+     */
+    private TableRow createEntry(Item item, int amount) {
+        switch(m_app.getActiveList()) {
+            case 0:
+                return createInventoryEntry(item, amount);
+            case 1:
+                return createShoppingEntry(item);
+            default:
+                return null;
+        }
     }
 
     /**
@@ -611,7 +911,9 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
     /////////////////////////////////////
 
     /**
-     * public function to call updateList
+     * public function to call updateList.
+     * Usually not needed, as the table follows the
+     * changes of the lists and items by itself.
      * @see #updateList()
      */
     public void update() {
@@ -620,28 +922,24 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
 
     /**
      * add the information aquired from AddToInventoryDialog
-     * to the ListProvider and triggers an update of the list
+     * to the ListProvider, the table is updated by the listener
      * @see AddToInventoryDialog
-     * @see #updateList()
      */
     public void readAddToInvDlgAndUpdate() {
         ListProvider.getInstance().getListById(m_app.getActiveList())
                 .add(ItemProvider.getInstance().getItemById(m_addToInvDlg.getItemId()), m_addToInvDlg.getAmount());
         m_addToInvDlg.dismiss();
-        updateList();
     }
 
     /**
      * add the information aquired from AddToShoppingDialog
-     * to the ListProvider and triggers an update of the list
+     * to the ListProvider, the table is updated by the listener
      * @see AddToShoppingDialog
-     * @see #updateList()
      */
     public void readAddToShoppingDlgAndUpdate() {
         ListProvider.getInstance().getListById(m_app.getActiveList())
                 .add(ItemProvider.getInstance().getItemById(m_addToShopDlg.getItemId()), 0);
         m_addToShopDlg.dismiss();
-        updateList();
     }
 
     //////////////////////////////
@@ -659,6 +957,9 @@ public class MainScreen extends AppCompatActivity implements View.OnClickListene
      */
     @Override
     public void onClick(View v) {
+        if(!m_loaded) {
+            return;
+        }
         switch (v.getId()) {
             case R.id.addItemButton: addButtonPressed(); break;
             case R.id.inventoryButton: inventoryButtonPressed(); break;
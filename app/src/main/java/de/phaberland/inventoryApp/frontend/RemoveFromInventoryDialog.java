@@ -34,7 +34,6 @@ import de.phaberland.inventoryApp.data.ListProvider;
 public class RemoveFromInventoryDialog extends DialogFragment {
     private final int m_itemId;
     private EditText m_text;
-    private final MainScreen m_callback;
 
     /////////////////////
     // dialog creation //
@@ -42,14 +41,11 @@ public class RemoveFromInventoryDialog extends DialogFragment {
 
     /**
      * Constructs an instance of the dialog,
-     * setting the item id, that is is called for
-     * and the callback.
-     * @param callback a MainScreen instance used as callback
+     * setting the item id, that is is called for.
      * @param id id of the item selected.
      */
-    public RemoveFromInventoryDialog(MainScreen callback, int id) {
+    public RemoveFromInventoryDialog(int id) {
         m_itemId = id;
-        m_callback = callback;
     }
 
     /**
@@ -99,7 +95,6 @@ public class RemoveFromInventoryDialog extends DialogFragment {
         }
 
         list.remove(item ,getAmount());
-        m_callback.update();
     }
 
     ///////////////////
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+package de.phaberland.inventoryApp.interfaces;
+
+/**
+ * ItemListListener interface is used to get notified
+ * about changes of the content of an ItemList.
+ * Every change is reported with the values before and
+ * after the change, so listeners can update themselves
+ * without looking at the whole list again.
+ * @see de.phaberland.inventoryApp.data.ItemList
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+public interface ItemListListener {
+    /**
+     * Will be called when an item was put on the list,
+     * which was not on the list before.
+     * @param listId id of the changed list
+     * @param itemId id of the added item
+     * @param amount amount of the item in the list
+     */
+    void itemAdded(int listId, int itemId, int amount);
+
+    /**
+     * Will be called when an item was taken from the list.
+     * @param listId id of the changed list
+     * @param itemId id of the removed item
+     * @param oldAmount amount of the item in the list before it was removed
+     */
+    void itemRemoved(int listId, int itemId, int oldAmount);
+
+    /**
+     * Will be called when the amount of an item
+     * already on the list changed.
+     * @param listId id of the changed list
+     * @param itemId id of the changed item
+     * @param oldAmount amount before the change
+     * @param newAmount amount after the change
+     */
+    void amountChanged(int listId, int itemId, int oldAmount, int newAmount);
+
+    /**
+     * Will be called when all items were taken from the list at once.
+     * No itemRemoved is reported for the single items.
+     * @param listId id of the cleared list
+     */
+    void listCleared(int listId);
+}
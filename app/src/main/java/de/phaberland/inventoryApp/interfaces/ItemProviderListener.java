@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+package de.phaberland.inventoryApp.interfaces;
+
+import de.phaberland.inventoryApp.data.Item;
+
+/**
+ * ItemProviderListener interface is used to get notified
+ * about items being created or changed in the ItemProvider.
+ * Every change is reported with the values before and
+ * after the change, so listeners can update themselves
+ * without looking at all items again.
+ * @see de.phaberland.inventoryApp.data.ItemProvider
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+public interface ItemProviderListener {
+    /**
+     * Will be called when a new item was created or restored.
+     * @param itemId id of the new item
+     */
+    void itemAdded(int itemId);
+
+    /**
+     * Will be called when the name of an item changed.
+     * @param itemId id of the renamed item
+     * @param oldName name before the change
+     * @param newName name after the change
+     */
+    void itemRenamed(int itemId, String oldName, String newName);
+
+    /**
+     * Will be called when the unit of an item changed.
+     * @param itemId id of the changed item
+     * @param oldUnit unit before the change
+     * @param newUnit unit after the change
+     */
+    void unitChanged(int itemId, Item.UNIT oldUnit, Item.UNIT newUnit);
+
+    /**
+     * Will be called when the critical or default value of an item changed.
+     * @param itemId id of the changed item
+     */
+    void valuesChanged(int itemId);
+
+    /**
+     * Will be called when all items were removed at once.
+     */
+    void itemsCleared();
+
+    /**
+     * Will be called when many items and list amounts were loaded
+     * at once, like when importing a file. The single items and
+     * amounts are not reported.
+     */
+    void itemsReloaded();
+}
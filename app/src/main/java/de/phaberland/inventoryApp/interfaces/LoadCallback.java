@@ -0,0 +1,24 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+package de.phaberland.inventoryApp.interfaces;
+
+/**
+ * LoadCallback interface is used to get informed, once
+ * the application data, which is loaded in the background,
+ * can be used. It is called on the main thread.
+ * @see de.phaberland.inventoryApp.app.InventoryApp#init(LoadCallback)
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+public interface LoadCallback {
+    /**
+     * Will be called once the items and lists are loaded
+     * and can be shown and changed. The alphabetical order
+     * and search index of the items might still be built.
+     */
+    void listsLoaded();
+}
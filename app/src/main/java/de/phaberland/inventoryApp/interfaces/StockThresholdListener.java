@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+package de.phaberland.inventoryApp.interfaces;
+
+/**
+ * StockThresholdListener interface is used to get
+ * notified by the StockThresholdEngine, when an item
+ * in the inventory is running out or was restocked.
+ * Only changes of the state are reported, so an item
+ * running out is reported once, until it recovered.
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+public interface StockThresholdListener {
+    /**
+     * Will be called when the amount of an item in the
+     * inventory dropped to or below its critical value,
+     * or its critical value was raised to the amount.
+     * @param itemId id of the item running out
+     */
+    void crossedCritical(int itemId);
+
+    /**
+     * Will be called when the amount of an item in the
+     * inventory is above its critical value again.
+     * @param itemId id of the item, which was restocked
+     */
+    void recovered(int itemId);
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2020 Peter Haberland
+ *
+ * No licensing, you may use/alter that code as you wish.
+ */
+package de.phaberland.inventoryApp.interfaces;
+
+/**
+ * StorageCallback interface is used to get informed, once
+ * the switch to another way of storing the application data,
+ * which is done in the background, is finished.
+ * It is called on the main thread.
+ * @see de.phaberland.inventoryApp.app.InventoryApp#setStorageBackend(String, StorageCallback)
+ *
+ * @author      Peter Haberland
+ * @version     %I%, %G%
+ */
+public interface StorageCallback {
+    /**
+     * Will be called once the data was written the new way
+     * and is stored that way from now on, or writing it failed
+     * and it is still stored as before.
+     * @param success true if the data is stored the new way
+     */
+    void storageChanged(boolean success);
+}